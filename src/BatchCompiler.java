@@ -0,0 +1,178 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Compiles many Mini-C files in one invocation: "java Main -batch outputdir input... [options]".
+ * An input is either a .c file or a directory whose .c files are all compiled. Each input x.c is compiled
+ * as by "java Main -gen x.c outputdir/x.s [options]", on a fixed pool of threads (-jobs, by default one per
+ * processor). What the compilations print is collected and reported file by file, in the order of the inputs,
+ * followed by a summary of the results and timings.
+ */
+public class BatchCompiler {
+    private static final class Result {
+        final File input;
+        final int code;
+        final long nanos;
+        final String output;
+
+        Result(File input, int code, long nanos, String output) {
+            this.input = input;
+            this.code = code;
+            this.nanos = nanos;
+            this.output = output;
+        }
+    }
+
+    private final File outputDir;
+    private final List<File> inputs;
+    private final List<String> options;
+    private final int jobs;
+
+    public BatchCompiler(File outputDir, List<File> inputs, List<String> options, int jobs) {
+        this.outputDir = outputDir;
+        this.inputs = inputs;
+        this.options = options;
+        this.jobs = jobs;
+    }
+
+    /*
+     * Parses the arguments following -batch and runs the batch, printing to out.
+     * Returns PASS if every file compiled, otherwise the exit code of the first file which did not.
+     */
+    static int run(String[] args, PrintStream out) {
+        List<String> options = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        int jobs = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-jobs")) {
+                if (i + 1 == args.length)
+                    return Main.usage(out);
+                try {
+                    jobs = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    return Main.usage(out);
+                }
+            } else if (args[i].startsWith("-")) {
+                options.add(args[i]);
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        // checked once here rather than by every compilation
+        if (paths.size() < 2 || jobs < 1 || Main.Options.parse(options) == null)
+            return Main.usage(out);
+
+        File outputDir = new File(paths.get(0));
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            out.println("Directory "+outputDir+" could not be created.");
+            return Main.FILE_NOT_FOUND;
+        }
+
+        List<File> inputs = new ArrayList<>();
+        for (String path : paths.subList(1, paths.size())) {
+            File input = new File(path);
+            if (input.isDirectory()) {
+                File[] sources = input.listFiles((dir, name) -> name.endsWith(".c"));
+                if (sources != null) {
+                    Arrays.sort(sources);
+                    inputs.addAll(Arrays.asList(sources));
+                }
+            } else {
+                inputs.add(input);
+            }
+        }
+
+        // two inputs with the same name would overwrite each other's output
+        Map<String, File> outputs = new HashMap<>();
+        for (File input : inputs) {
+            File previous = outputs.put(outputName(input), input);
+            if (previous != null) {
+                out.println("Files "+previous+" and "+input+" would both be compiled to "
+                        +new File(outputDir, outputName(input))+".");
+                return Main.usage(out);
+            }
+        }
+
+        return new BatchCompiler(outputDir, inputs, options, jobs).run(out);
+    }
+
+    private static String outputName(File input) {
+        String name = input.getName();
+        if (name.endsWith(".c"))
+            name = name.substring(0, name.length() - 2);
+        return name + ".s";
+    }
+
+    public int run(PrintStream out) {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        List<Future<Result>> futures = new ArrayList<>(inputs.size());
+        for (File input : inputs)
+            futures.add(executor.submit(() -> compile(input)));
+
+        int passed = 0;
+        int code = Main.PASS;
+        long compiling = 0;
+        List<Result> results = new ArrayList<>(inputs.size());
+        try {
+            for (Future<Result> future : futures) {
+                Result result = future.get();
+                results.add(result);
+                out.print(result.output);
+                out.printf("%-4s %s (%.1f ms)%n", result.code == Main.PASS ? "ok" : "FAIL", result.input,
+                        result.nanos / 1e6);
+                compiling += result.nanos;
+                if (result.code == Main.PASS)
+                    passed++;
+                else if (code == Main.PASS)
+                    code = result.code;
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        out.println();
+        out.printf("Batch: %d files, %d passed, %d failed%n", results.size(), passed, results.size() - passed);
+        for (Result result : results)
+            if (result.code != Main.PASS)
+                out.println("  failed ("+result.code+"): "+result.input);
+        out.printf("Time: %.1f ms elapsed, %.1f ms compiling on %d threads%n", elapsed / 1e6, compiling / 1e6, jobs);
+        return code;
+    }
+
+    private Result compile(File input) throws Exception {
+        String[] args = new String[3 + options.size()];
+        args[0] = "-gen";
+        args[1] = input.getPath();
+        args[2] = new File(outputDir, outputName(input)).getPath();
+        for (int i = 0; i < options.size(); i++)
+            args[3 + i] = options.get(i);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int code;
+        long start = System.nanoTime();
+        try (PrintStream stream = new PrintStream(output, true)) {
+            try {
+                code = Main.compile(args, stream, stream);
+            } catch (RuntimeException | Error e) {
+                e.printStackTrace(stream);
+                code = Main.CRASH;
+            }
+        }
+        return new Result(input, code, System.nanoTime() - start, output.toString());
+    }
+}
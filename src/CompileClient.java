@@ -0,0 +1,84 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+
+/**
+ * Drop-in replacement for "java Main ..." which has a running CompileServer do the compilation:
+ * prints the same output and exits with the same code.
+ *
+ * Usage: java CompileClient [-port port] pass inputfile outputfile [options]
+ * The port defaults to the CompileServer one, or to the value of the MINIC_SERVER_PORT environment variable.
+ * The protocol is plain text (see CompileServer), so a script can talk to the server directly as well.
+ */
+public class CompileClient {
+    // the server could not be reached
+    private static final int NO_SERVER = 3;
+
+    public static void main(String[] args) {
+        int port = CompileServer.DEFAULT_PORT;
+        String environment = System.getenv("MINIC_SERVER_PORT");
+        if (environment != null)
+            port = Integer.parseInt(environment);
+
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("-port")) {
+            port = Integer.parseInt(args[1]);
+            first = 2;
+        }
+
+        // the server does not share our working directory
+        StringBuilder request = new StringBuilder();
+        for (int i = first; i < args.length; i++) {
+            String arg = args[i];
+            if (i == first + 1 || i == first + 2)
+                arg = new File(arg).getAbsolutePath();
+            if (i > first)
+                request.append('\t');
+            request.append(arg);
+        }
+
+        System.exit(request(port, request.toString()));
+    }
+
+    private static int request(int port, String request) {
+        Charset charset = Charset.defaultCharset();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), charset);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), charset))) {
+            out.write(request + "\n");
+            out.flush();
+
+            int code = NO_SERVER;
+            boolean firstOut = true;
+            boolean firstErr = true;
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (line.startsWith("out ")) {
+                    if (!firstOut)
+                        System.out.print('\n');
+                    System.out.print(line.substring(4));
+                    firstOut = false;
+                } else if (line.startsWith("err ")) {
+                    if (!firstErr)
+                        System.err.print('\n');
+                    System.err.print(line.substring(4));
+                    firstErr = false;
+                } else if (line.startsWith("exit ")) {
+                    code = Integer.parseInt(line.substring(5));
+                }
+            }
+            System.out.flush();
+            System.err.flush();
+            return code;
+        } catch (IOException e) {
+            System.err.println("Could not reach the compile server on localhost:" + port + ": " + e.getMessage());
+            return NO_SERVER;
+        }
+    }
+}
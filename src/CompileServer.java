@@ -0,0 +1,106 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Compiles in a single long-lived JVM, so that JVM startup and JIT warm-up are paid once for a whole build
+ * instead of once per file. Listens on a localhost port and runs every request through Main.compile.
+ *
+ * The protocol is line based, plain text in the platform charset:
+ *   * a request is one line holding the arguments of Main separated by tabs, e.g. "-gen\tin.c\tout.s"
+ *     (relative paths are resolved against the working directory of the server),
+ *   * the response is the standard output of the compilation with every line prefixed by "out ",
+ *     then its error output with every line prefixed by "err ", and finally "exit <code>" where the code
+ *     is the one Main would have exited with. The server then closes the connection.
+ *     An output is split at each newline, so one ending with a newline is followed by an empty "out " line:
+ *     joining the lines of a stream back with newlines gives exactly what was printed.
+ * Requests are compiled concurrently on a fixed pool of one thread per processor, each one printing to its own
+ * buffers; the connections beyond that wait for a thread. Only .s output files are written, a -gen request naming
+ * any other output file is refused with FILE_NOT_FOUND.
+ */
+public class CompileServer {
+    public static final int DEFAULT_PORT = 7150;
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final int port;
+    private final ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    public CompileServer(int port) {
+        this.port = port;
+    }
+
+    // serves requests until the JVM is stopped
+    public void run() throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 64, InetAddress.getLoopbackAddress())) {
+            System.out.println("Compile server listening on localhost:" + server.getLocalPort());
+            while (true) {
+                Socket client = server.accept();
+                workers.execute(() -> serve(client));
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (Socket socket = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), CHARSET))) {
+            String request = in.readLine();
+            if (request == null)
+                return;
+
+            String[] args = request.split("\t");
+            ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+            int code;
+            try (PrintStream compileOut = new PrintStream(stdout, true, CHARSET.name());
+                 PrintStream compileErr = new PrintStream(stderr, true, CHARSET.name())) {
+                if (args.length >= 3 && args[0].equals("-gen") && !args[2].endsWith(".s")) {
+                    compileOut.println("Output file "+args[2]+" is not a .s file, the server does not write it.");
+                    code = Main.FILE_NOT_FOUND;
+                } else {
+                    try {
+                        code = Main.compile(args, compileOut, compileErr);
+                    } catch (RuntimeException | Error e) {
+                        e.printStackTrace(compileErr);
+                        code = Main.CRASH;
+                    }
+                }
+            }
+
+            writeLines(out, "out ", new String(stdout.toByteArray(), CHARSET));
+            writeLines(out, "err ", new String(stderr.toByteArray(), CHARSET));
+            out.write("exit " + code + "\n");
+        } catch (IOException e) {
+            // the client has gone away, there is nobody left to report to
+        }
+    }
+
+    private static void writeLines(Writer out, String prefix, String text) throws IOException {
+        if (text.isEmpty())
+            return;
+
+        int start = 0;
+        while (true) {
+            int end = text.indexOf('\n', start);
+            out.write(prefix);
+            out.write(text, start, (end < 0 ? text.length() : end) - start);
+            out.write('\n');
+            if (end < 0)
+                return;
+            start = end + 1;
+        }
+    }
+}
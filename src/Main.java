@@ -1,16 +1,27 @@
 import ast.ASTPrinter;
 import ast.Program;
 import gen.CodeGenerator;
+import gen.GenContext;
+import gen.Optimization;
+import lexer.MappedScanner;
 import lexer.Scanner;
 import lexer.Token;
 import lexer.Tokeniser;
+import opt.Inliner;
+import opt.Optimizer;
 import parser.Parser;
 import sem.SemanticAnalyzer;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -20,27 +31,116 @@ import java.io.StringWriter;
  *     which returns the total number of lexing errors.
  */
 public class Main {
-	private static final int FILE_NOT_FOUND = 2;
+	static final int FILE_NOT_FOUND = 2;
     private static final int MODE_FAIL      = 254;
     private static final int LEXER_FAIL     = 250;
     private static final int PARSER_FAIL    = 245;
     private static final int SEM_FAIL       = 240;
-    private static final int PASS           = 0;
+    static final int PASS                   = 0;
+    private static final int USAGE          = -1;
+    // an exception escaping main makes the JVM exit with 1, which CompileServer and BatchCompiler report a crash with
+    static final int CRASH                  = 1;
     
     private enum Mode {
         LEXER, PARSER, AST, SEMANTICANALYSIS, GEN
     }
 
-    private static void usage() {
-        System.out.println("Usage: java "+Main.class.getSimpleName()+" pass inputfile outputfile");
-        System.out.println("where pass is either: -lexer, -parser, -ast, -sem or -gen");
-        System.exit(-1);
+    static int usage(PrintStream out) {
+        out.println("Usage: java "+Main.class.getSimpleName()+" pass inputfile outputfile [options]");
+        out.println("where pass is either: -lexer, -parser, -ast, -sem or -gen");
+        out.println("and options are: -packed (lex the whole file into a packed token buffer before parsing)");
+        out.println("                 -parallel (type check and generate code for the functions in parallel)");
+        out.println("                 -O0 (disable all the optimizations), -fno-<name> (disable one), -f<name> (enable one)");
+        out.println("                 -finline-limit=<n> (size of the largest function inlined, "+Inliner.DEFAULT_LIMIT+" by default)");
+        out.print("                 where the optimizations are:");
+        for (Optimization optimization : Optimization.values())
+            out.print(" "+optimization.flag);
+        out.println();
+        out.println("   or: java "+Main.class.getSimpleName()+" -server [port]");
+        out.println("to compile the requests of CompileClient in this JVM (see CompileServer)");
+        out.println("   or: java "+Main.class.getSimpleName()+" -batch outputdir input... [options] [-jobs n]");
+        out.println("to generate outputdir/x.s for every input file x.c, or every .c file of an input directory,");
+        out.println("on n threads (see BatchCompiler)");
+        return USAGE;
+    }
+
+    // the options following the input and output files
+    static final class Options {
+        boolean packed = false;
+        ForkJoinPool pool = null;
+        final EnumSet<Optimization> optimizations = EnumSet.allOf(Optimization.class);
+        int inlineLimit = Inliner.DEFAULT_LIMIT;
+
+        // null if one of args is not an option
+        static Options parse(List<String> args) {
+            Options options = new Options();
+            for (String arg : args) {
+                switch (arg) {
+                    case "-packed": options.packed = true; break;
+                    case "-parallel": options.pool = ForkJoinPool.commonPool(); break;
+                    case "-O0": options.optimizations.clear(); break;
+                    default:
+                        Optimization optimization = null;
+                        if (arg.startsWith("-finline-limit=")) {
+                            try {
+                                options.inlineLimit = Integer.parseInt(arg.substring("-finline-limit=".length()));
+                            } catch (NumberFormatException e) {
+                                return null;
+                            }
+                            continue;
+                        }
+                        if (arg.startsWith("-fno-")) {
+                            optimization = Optimization.fromFlag(arg.substring(5));
+                            if (optimization != null)
+                                options.optimizations.remove(optimization);
+                        } else if (arg.startsWith("-f")) {
+                            optimization = Optimization.fromFlag(arg.substring(2));
+                            if (optimization != null)
+                                options.optimizations.add(optimization);
+                        }
+                        if (optimization == null)
+                            return null;
+                }
+            }
+            return options;
+        }
+    }
+
+    private static Parser newParser(Tokeniser tokeniser, boolean packed, PrintStream out) {
+        if (packed)
+            return new Parser(tokeniser.tokenise(), out);
+        return new Parser(tokeniser, out);
     }
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("-server")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : CompileServer.DEFAULT_PORT;
+            try {
+                new CompileServer(port).run();
+            } catch (IOException e) {
+                System.out.println("Could not serve on port "+port+": "+e.getMessage());
+                System.exit(FILE_NOT_FOUND);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("-batch"))
+            System.exit(BatchCompiler.run(Arrays.copyOfRange(args, 1, args.length), System.out));
+
+        System.exit(compile(args, System.out, System.err));
+    }
 
-        if (args.length != 3)
-            usage();
+    /*
+     * Runs the pass given by the command line arguments args, printing what the pass prints to out
+     * and semantic errors to err. Returns the exit code of the compilation.
+     */
+    static int compile(String[] args, PrintStream out, PrintStream err) {
+
+        if (args.length < 3)
+            return usage(out);
+
+        Options options = Options.parse(Arrays.asList(args).subList(3, args.length));
+        if (options == null)
+            return usage(out);
 
         Mode mode = null;
         switch (args[0]) {
@@ -48,8 +148,7 @@ public class Main {
             case "-ast":   mode = Mode.AST; break;		case "-sem":    mode = Mode.SEMANTICANALYSIS; break;
             case "-gen":   mode = Mode.GEN; break;
             default:
-                usage();
-                break;
+                return usage(out);
         }
 
         File inputFile = new File(args[1]);
@@ -57,81 +156,85 @@ public class Main {
 
         Scanner scanner;
         try {
-            scanner = new Scanner(inputFile);
+            scanner = new MappedScanner(inputFile);
         } catch (FileNotFoundException e) {
-            System.out.println("File "+inputFile.toString()+" does not exist.");
-            System.exit(FILE_NOT_FOUND);
-            return;
+            out.println("File "+inputFile.toString()+" does not exist.");
+            return FILE_NOT_FOUND;
+        } catch (IOException e) {
+            out.println("File "+inputFile.toString()+" could not be read.");
+            return FILE_NOT_FOUND;
         }
 
-        Tokeniser tokeniser = new Tokeniser(scanner);
+        Tokeniser tokeniser = new Tokeniser(scanner, out);
         if (mode == Mode.LEXER) {
             for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken()) 
-            	System.out.println(t);
+            	out.println(t);
             if (tokeniser.getErrorCount() == 0)
-        		System.out.println("Lexing: pass");
+        		out.println("Lexing: pass");
     	    else
-        		System.out.println("Lexing: failed ("+tokeniser.getErrorCount()+" errors)");	
-            System.exit(tokeniser.getErrorCount() == 0 ? PASS : LEXER_FAIL);
+        		out.println("Lexing: failed ("+tokeniser.getErrorCount()+" errors)");	
+            return tokeniser.getErrorCount() == 0 ? PASS : LEXER_FAIL;
         } else if (mode == Mode.PARSER) {
-		    Parser parser = new Parser(tokeniser);
+		    Parser parser = newParser(tokeniser, options.packed, out);
 		    parser.parse();
 		    if (parser.getErrorCount() == 0)
-		    	System.out.println("Parsing: pass");
+		    	out.println("Parsing: pass");
 		    else
-		    	System.out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
-		    System.exit(parser.getErrorCount() == 0 ? PASS : PARSER_FAIL);
+		    	out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
+		    return parser.getErrorCount() == 0 ? PASS : PARSER_FAIL;
         }  else if (mode == Mode.AST) {
-            Parser parser = new Parser(tokeniser);
+            Parser parser = newParser(tokeniser, options.packed, out);
             Program programAst = parser.parse();
             if (parser.getErrorCount() == 0) {
-                System.out.println("Parsing: pass");
-                System.out.println("Printing out AST:");
+                out.println("Parsing: pass");
+                out.println("Printing out AST:");
                 PrintWriter writer;
                 StringWriter sw = new StringWriter();
                 try {
                     writer = new PrintWriter(sw);
                     programAst.accept(new ASTPrinter(writer));
                     writer.flush();
-                    System.out.print(sw.toString());
+                    out.print(sw.toString());
                     writer.close();
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    e.printStackTrace(err);
                 }
             } else
-                System.out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
-            System.exit(parser.getErrorCount() == 0 ? PASS : PARSER_FAIL);
+                out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
+            return parser.getErrorCount() == 0 ? PASS : PARSER_FAIL;
         } else if (mode == Mode.SEMANTICANALYSIS) {
-            Parser parser = new Parser(tokeniser);
+            Parser parser = newParser(tokeniser, options.packed, out);
             Program programAst = parser.parse();
             if (parser.getErrorCount() == 0) {
-                SemanticAnalyzer sem = new SemanticAnalyzer();
-                int errors = sem.analyze(programAst);
+                SemanticAnalyzer sem = new SemanticAnalyzer(err);
+                int errors = sem.analyze(programAst, options.pool);
                 if (errors == 0)
-                    System.out.println("Semantic analysis: Pass");
+                    out.println("Semantic analysis: Pass");
                 else
-                    System.out.println("Semantic analysis: Failed (" + errors + ")");
-                System.exit(errors == 0 ? PASS : SEM_FAIL);
+                    out.println("Semantic analysis: Failed (" + errors + ")");
+                return errors == 0 ? PASS : SEM_FAIL;
             } else
-                System.exit(PARSER_FAIL);
+                return PARSER_FAIL;
         } else if (mode == Mode.GEN) {
-            Parser parser = new Parser(tokeniser);
+            Parser parser = newParser(tokeniser, options.packed, out);
             Program programAst = parser.parse();
             if (parser.getErrorCount() > 0)
-                System.exit(PARSER_FAIL);
-            SemanticAnalyzer sem = new SemanticAnalyzer();
-            int errors = sem.analyze(programAst);
+                return PARSER_FAIL;
+            SemanticAnalyzer sem = new SemanticAnalyzer(err);
+            int errors = sem.analyze(programAst, options.pool);
             if (errors > 0)
-                System.exit(SEM_FAIL);
+                return SEM_FAIL;
+            new Optimizer(options.optimizations, options.inlineLimit).optimize(programAst);
             CodeGenerator codegen = new CodeGenerator();
             try {
-                codegen.emitProgram(programAst, outputFile);
+                codegen.emitProgram(programAst, outputFile, new GenContext(options.pool, options.optimizations));
             } catch (FileNotFoundException e) {
-                System.out.println("File "+outputFile.toString()+" does not exist.");
-                System.exit(FILE_NOT_FOUND);
+                out.println("File "+outputFile.toString()+" does not exist.");
+                return FILE_NOT_FOUND;
             }
+            return PASS;
         } else {
-        	System.exit(MODE_FAIL);
+        	return MODE_FAIL;
         }
     }
 }
\ No newline at end of file
@@ -119,6 +119,20 @@ public class ASTPrinter implements ASTVisitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitInlinedCallExpr(InlinedCallExpr ic) {
+        writer.print("InlinedCallExpr(");
+        ic.call.accept(this);
+        for (VarDecl vd : ic.params) {
+            writer.print(",");
+            vd.accept(this);
+        }
+        writer.print(",");
+        ic.block.accept(this);
+        writer.print(")");
+        return null;
+    }
+
     @Override
     public Void visitStructType(StructType st) {
         writer.print("StructType(");
@@ -27,6 +27,7 @@ public interface ASTVisitor<T> {
     public T visitIf(If i);
     public T visitAssign(Assign a);
     public T visitReturn(Return r);
+    public T visitInlinedCallExpr(InlinedCallExpr ic);
 
     // to complete ... (should have one visit method for each concrete AST node class)
 }
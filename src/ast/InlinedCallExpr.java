@@ -0,0 +1,27 @@
+package ast;
+
+import java.util.List;
+
+/**
+ * A call whose function has been inlined by opt.Inliner, once the semantic analysis is over: the arguments are
+ * assigned to fresh locals standing for the parameters, then a copy of the body of the function is run, its return
+ * statements giving the value of the expression.
+ */
+public class InlinedCallExpr extends Expr {
+    public final FunCallExpr call;      // the call replaced, its arguments are evaluated in the same order
+    public final List<VarDecl> params;  // fresh locals for the parameters of the function
+    public final Block block;           // copy of the body of the function, declaring fresh locals of its own
+
+    public InlinedCallExpr(FunCallExpr call, List<VarDecl> params, Block block) {
+        this.call = call;
+        this.params = params;
+        this.block = block;
+    }
+
+    public <T> T accept(ASTVisitor<T> v) {
+        return v.visitInlinedCallExpr(this);
+    }
+
+    @Override
+    public String toString() { return "inlined " + call; }
+}
@@ -1,7 +1,5 @@
 package ast;
 
-import static gen.CodeGenerator.allignTo4Bytes;
-
 public class StructType implements Type {
     public final String name;
     public StructTypeDecl std; // to be filled in by the type analyser
@@ -16,11 +14,5 @@ public class StructType implements Type {
     public String toString() { return "struct " + name; }
 
     @Override
-    public int sizeOf() {
-        int size = 0;
-        for (VarDecl vd : std.variables) {
-            size += allignTo4Bytes(vd.type.sizeOf());
-        }
-        return size;
-    }
+    public int sizeOf() { return std.sizeOf(); }
 }
@@ -2,10 +2,16 @@ package ast;
 
 import java.util.List;
 
+import static gen.CodeGenerator.allignTo4Bytes;
+
 public class StructTypeDecl implements ASTNode {
     public final StructType structType;
     public final List<VarDecl> variables;
 
+    // field offsets, computed on first use (the field types must have been resolved by then)
+    private int[] offsets = null;
+    private int size;
+
     public StructTypeDecl(StructType structType, List<VarDecl> variables) {
         this.structType = structType;
         this.variables = variables;
@@ -13,8 +19,42 @@ public class StructTypeDecl implements ASTNode {
 
     public <T> T accept(ASTVisitor<T> v) { return v.visitStructTypeDecl(this); }
 
+    // field names are canonical (see lexer.NameTable), equals() only runs for names built elsewhere
+    public int fieldIndex(String field) {
+        for (int i = 0; i < variables.size(); i++) {
+            String name = variables.get(i).varName;
+            if (name == field || name.equals(field))
+                return i;
+        }
+        return -1;
+    }
+
+    public VarDecl field(String field) {
+        int index = fieldIndex(field);
+        return index < 0 ? null : variables.get(index);
+    }
 
+    public int fieldOffset(int index) {
+        if (offsets == null)
+            computeLayout();
+        return offsets[index];
+    }
 
+    public int sizeOf() {
+        if (offsets == null)
+            computeLayout();
+        return size;
+    }
 
+    private void computeLayout() {
+        int[] offsets = new int[variables.size()];
+        int offset = 0;
+        for (int i = 0; i < variables.size(); i++) {
+            offsets[i] = offset;
+            offset += allignTo4Bytes(variables.get(i).type.sizeOf());
+        }
+        this.size = offset;
+        this.offsets = offsets;
+    }
 
 }
@@ -1,12 +1,10 @@
 package ast;
 
-import java.util.HashMap;
-
 public class VarDecl implements ASTNode {
     public final Type type;
     public final String varName;
     private String globalName = null;
-    private HashMap<String, String> globalStructName;
+    private String[] globalStructName; // indexed like the fields of the struct type
     private Integer genStackOffset = null;
 
     public VarDecl(Type type, String varName) {
@@ -55,26 +53,25 @@ public class VarDecl implements ASTNode {
             throw new RuntimeException("label can't be empty");
         }
 
-        // initialise hashmap if this is our first time labelling the struct field
+        StructTypeDecl std = ((StructType) type).std;
+
+        // initialise the labels if this is our first time labelling the struct field
         if (globalStructName == null) {
-            globalStructName = new HashMap<>();
-            for (VarDecl vd : ((StructType) type).std.variables) {
-                // initialise each field label to empty str
-                globalStructName.put(vd.varName, "");
-            }
+            globalStructName = new String[std.variables.size()];
         }
 
-        // check if the field exists by seeing if the label map contains the key
-        if (!globalStructName.containsKey(field)) {
+        // check if the field exists
+        int index = std.fieldIndex(field);
+        if (index < 0) {
             throw new RuntimeException("this struct does not have that field");
         }
 
         // we do not allow relabelling
-        if (!globalStructName.get(field).isEmpty()) {
+        if (globalStructName[index] != null) {
             throw new RuntimeException("this struct has that field already labelled");
         }
 
-        globalStructName.put(field, globalName);
+        globalStructName[index] = globalName;
     }
 
     // returns label for that field, if the vardecl is a struct
@@ -83,13 +80,14 @@ public class VarDecl implements ASTNode {
             throw new RuntimeException("this vardecl does not declare a struct variable");
         }
 
-        if (!globalStructName.containsKey(field)) {
+        int index = ((StructType) type).std.fieldIndex(field);
+        if (index < 0) {
             throw new RuntimeException("this struct does not have that field " + field);
         }
 
-        String globalName = globalStructName.get(field);
+        String globalName = globalStructName[index];
 
-        if (globalName.isEmpty()) {
+        if (globalName == null) {
             throw new RuntimeException("this struct has the field, but it is not labelled. field is " + field);
         }
 
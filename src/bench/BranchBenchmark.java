@@ -0,0 +1,107 @@
+package bench;
+
+import gen.Optimization;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Measures what compiling the conditions of if and while into branches (-fbranch-conditions) saves per loop
+ * iteration: loop-heavy programs are compiled with the default optimizations, with and without it, and run in MARS.
+ * Each program prints its result, then the number of iterations of its loops, which the executed instructions are
+ * divided by. The -fno columns are those of -fno-branch-conditions.
+ *
+ * Usage: java -cp bin bench.BranchBenchmark [mars.jar] [steps]
+ */
+public class BranchBenchmark {
+
+    private static final String[][] PROGRAMS = {
+            { "counted", // sum of the multiples of 3 or 5: a counted loop around an ||
+                    "int main() {",
+                    "  int i; int sum; int iterations;",
+                    "  i = 0; sum = 0; iterations = 0;",
+                    "  while (i < 20000) {",
+                    "    if (i % 3 == 0 || i % 5 == 0) sum = sum + i;",
+                    "    iterations = iterations + 1;",
+                    "    i = i + 1;",
+                    "  }",
+                    "  print_i(sum); print_c('\\n'); print_i(iterations);",
+                    "  return 0;",
+                    "}" },
+            { "bubble", // bubble sort of a reversed array: nested loops around a comparison of elements
+                    "int a[200];",
+                    "int main() {",
+                    "  int i; int j; int t; int n; int iterations;",
+                    "  n = 200; i = 0; iterations = 0;",
+                    "  while (i < n) { a[i] = n - i; i = i + 1; }",
+                    "  i = 0;",
+                    "  while (i < n - 1) {",
+                    "    j = 0;",
+                    "    while (j < n - 1 - i) {",
+                    "      if (a[j] > a[j + 1]) { t = a[j]; a[j] = a[j + 1]; a[j + 1] = t; }",
+                    "      iterations = iterations + 1;",
+                    "      j = j + 1;",
+                    "    }",
+                    "    i = i + 1;",
+                    "  }",
+                    "  print_i(a[0]); print_c(' '); print_i(a[n - 1]); print_c('\\n'); print_i(iterations);",
+                    "  return 0;",
+                    "}" },
+            { "search", // linear searches: a loop condition made of an && of two comparisons
+                    "int a[500];",
+                    "int main() {",
+                    "  int i; int key; int found; int iterations;",
+                    "  i = 0; found = 0; iterations = 0;",
+                    "  while (i < 500) { a[i] = i * 7; i = i + 1; }",
+                    "  key = 0;",
+                    "  while (key <= 3500) {",
+                    "    i = 0;",
+                    "    while (i < 500 && a[i] != key) { i = i + 1; iterations = iterations + 1; }",
+                    "    if (i != 500) found = found + 1;",
+                    "    key = key + 50;",
+                    "  }",
+                    "  print_i(found); print_c('\\n'); print_i(iterations);",
+                    "  return 0;",
+                    "}" },
+    };
+
+    public static void main(String[] args) throws Exception {
+        File mars = new File(args.length > 0 ? args[0] : "desc/part3/Mars4_5.jar");
+        long steps = args.length > 1 ? Long.parseLong(args[1]) : 100000000;
+
+        Set<Optimization> branches = EnumSet.allOf(Optimization.class);
+        Set<Optimization> values = EnumSet.allOf(Optimization.class);
+        values.remove(Optimization.BRANCH_CONDITIONS);
+        File noInput = new File("");
+
+        System.out.printf("%-10s %12s %11s %14s %14s %13s %13s%n", "program", "iterations", "static", "dynamic -fno",
+                "dynamic", "per iter -fno", "per iter");
+        boolean failed = false;
+        for (String[] program : PROGRAMS) {
+            File source = File.createTempFile("bench", ".c");
+            source.deleteOnExit();
+            Files.write(source.toPath(), Arrays.asList(program).subList(1, program.length), StandardCharsets.ISO_8859_1);
+
+            MarsBenchmark.Run before = MarsBenchmark.run(source, values, mars, steps, noInput);
+            MarsBenchmark.Run after = MarsBenchmark.run(source, branches, mars, steps, noInput);
+            if (before == null || after == null || before.limited || after.limited || !before.output.equals(after.output)) {
+                System.out.printf("%-10s failed: does not compile, does not terminate or output differs%n", program[0]);
+                failed = true;
+                continue;
+            }
+
+            // the last line of the output is the number of iterations
+            String output = before.output.trim();
+            long iterations = Long.parseLong(output.substring(output.lastIndexOf('\n') + 1).trim());
+            System.out.printf("%-10s %12d %5d->%-5d %14d %14d %13.2f %13.2f%n", program[0], iterations,
+                    before.staticCount, after.staticCount, before.dynamicCount, after.dynamicCount,
+                    (double) before.dynamicCount / iterations, (double) after.dynamicCount / iterations);
+        }
+        if (failed)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,102 @@
+package bench;
+
+import ast.Program;
+import gen.CodeGenerator;
+import gen.GenContext;
+import lexer.MappedScanner;
+import lexer.Tokeniser;
+import parser.Parser;
+import sem.SemanticAnalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles the valid Mini-C programs of a directory (default tests/) from many threads at once, every other
+ * compilation also generating its functions in parallel, and checks that each output is identical to the one
+ * of a sequential compilation of the same program.
+ *
+ * Usage: java -cp bin bench.ConcurrentCompileStressTest [directory] [threads] [compilationsPerThread]
+ */
+public class ConcurrentCompileStressTest {
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : "tests");
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int compilations = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        File[] sources = dir.listFiles((d, name) -> name.endsWith(".c"));
+        if (sources == null || sources.length == 0)
+            throw new IOException("no .c files in " + dir);
+        Arrays.sort(sources);
+
+        // reference outputs, compiled one at a time
+        List<File> programs = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (File source : sources) {
+            String output = compile(source, null);
+            if (output != null) {
+                programs.add(source);
+                expected.add(output);
+            }
+        }
+        System.out.printf("%d programs, %d threads, %d compilations per thread%n", programs.size(), threads, compilations);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            results.add(executor.submit(() -> {
+                int mismatches = 0;
+                for (int i = 0; i < compilations; i++) {
+                    int program = (thread + i) % programs.size();
+                    ForkJoinPool pool = i % 2 == 0 ? null : ForkJoinPool.commonPool();
+                    String output = compile(programs.get(program), pool);
+                    if (!expected.get(program).equals(output)) {
+                        System.out.println("output differs for " + programs.get(program) + (pool == null ? "" : " (parallel functions)"));
+                        mismatches++;
+                    }
+                }
+                return mismatches;
+            }));
+        }
+
+        int mismatches = 0;
+        for (Future<Integer> result : results)
+            mismatches += result.get();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%d compilations in %.1f ms, %d mismatches%n", threads * compilations, elapsed / 1e6, mismatches);
+        if (mismatches > 0)
+            System.exit(1);
+    }
+
+    // assembly generated for the source, null if it does not compile
+    private static String compile(File source, ForkJoinPool pool) throws IOException {
+        Tokeniser tokeniser = new Tokeniser(new MappedScanner(source));
+        Parser parser = new Parser(tokeniser);
+        Program program = parser.parse();
+        if (tokeniser.getErrorCount() > 0 || parser.getErrorCount() > 0)
+            return null;
+
+        if (new SemanticAnalyzer().analyze(program, pool) > 0)
+            return null;
+
+        StringWriter output = new StringWriter();
+        new CodeGenerator().emitProgram(program, new PrintWriter(output), new GenContext(pool));
+        return output.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package bench;
+
+import ast.Program;
+import gen.AsmPrinter;
+import gen.CodeGenerator;
+import gen.GenContext;
+import gen.LabelTable;
+import gen.OutputWriter;
+import gen.Register;
+import lexer.MappedScanner;
+import lexer.Tokeniser;
+import parser.Parser;
+import sem.SemanticAnalyzer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Measures assembly emission throughput (emitted lines/s) into a file: the code generation of a
+ * tests/tictactoe.c style program, and a stream of instructions recorded by an OutputWriter and printed by AsmPrinter.
+ *
+ * Usage: java -cp bin bench.EmitBenchmark [input.c] [lines]
+ * The functions of the input (default tests/tictactoe.c) are repeated until lines (default 20000) is reached.
+ */
+public class EmitBenchmark {
+
+    private static final int WARMUP = 5;
+    private static final int RUNS = 10;
+    private static final int INSTRUCTIONS = 1000000;
+
+    public static void main(String[] args) throws IOException {
+        File source = new File(args.length > 0 && args[0].endsWith(".c") ? args[0] : "tests/tictactoe.c");
+        int lines = args.length > 0 && !args[args.length - 1].endsWith(".c") ? Integer.parseInt(args[args.length - 1]) : 20000;
+
+        File input = Inputs.scaleProgram(source, lines);
+        input.deleteOnExit();
+        File output = File.createTempFile("bench", ".s");
+        output.deleteOnExit();
+
+        // the code generator annotates the AST, so every run needs a fresh one, built outside of the measurement
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            Program program = analyze(input);
+            long start = System.nanoTime();
+            new CodeGenerator().emitProgram(program, output, new GenContext());
+            if (i >= WARMUP)
+                best = Math.min(best, System.nanoTime() - start);
+        }
+        report("CodeGenerator (" + lines + " lines of Mini-C)", countLines(output), best);
+
+        best = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            long start = System.nanoTime();
+            try (PrintWriter writer = new PrintWriter(output)) {
+                OutputWriter out = new OutputWriter(new LabelTable());
+                Register x = Register.tmpRegs.get(0);
+                Register y = Register.tmpRegs.get(1);
+                out.newSection("text");
+                try (OutputWriter scope = out.scope()) {
+                    for (int n = 0; n < INSTRUCTIONS / 4; n++) {
+                        scope.lw(x, Register.fp, -4 * (n & 15));
+                        scope.add(y, x, n);
+                        scope.add(x, x, y);
+                        scope.sw(x, Register.sp, 0);
+                    }
+                }
+                new AsmPrinter(writer).print(out.getInstructions());
+            }
+            if (i >= WARMUP)
+                best = Math.min(best, System.nanoTime() - start);
+        }
+        report("OutputWriter instructions", countLines(output), best);
+    }
+
+    private static Program analyze(File input) throws IOException {
+        Parser parser = new Parser(new Tokeniser(new MappedScanner(input)));
+        Program program = parser.parse();
+        if (parser.getErrorCount() != 0 || new SemanticAnalyzer().analyze(program) != 0)
+            throw new IllegalStateException("the benchmark input does not compile");
+        return program;
+    }
+
+    private static long countLines(File file) throws IOException {
+        long lines = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            while (reader.readLine() != null)
+                lines++;
+        }
+        return lines;
+    }
+
+    private static void report(String name, long lines, long nanos) {
+        System.out.printf("%-40s %9d lines %8.1f ms %12.0f lines/s%n", name, lines, nanos / 1e6, lines / (nanos / 1e9));
+    }
+}
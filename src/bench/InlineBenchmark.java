@@ -0,0 +1,121 @@
+package bench;
+
+import gen.Optimization;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Measures what inlining small leaf functions (-finline, see opt.Inliner) saves per call: call-heavy programs are
+ * compiled with the default optimizations, with and without it, and run in MARS. Each program prints its result, then
+ * the number of calls it makes to the functions which may be inlined, which the executed instructions are divided by.
+ * The -fno columns are those of -fno-inline.
+ *
+ * Usage: java -cp bin bench.InlineBenchmark [mars.jar] [steps]
+ */
+public class InlineBenchmark {
+
+    private static final String[][] PROGRAMS = {
+            { "helpers", // small helpers called from a loop, with early returns
+                    "int abs(int x) { if (x < 0) return 0 - x; return x; }",
+                    "int max(int a, int b) { if (a > b) return a; return b; }",
+                    "int clamp(int x, int low, int high) { if (x < low) return low; if (x > high) return high; return x; }",
+                    "int main() {",
+                    "  int i; int sum; int calls;",
+                    "  i = 0; sum = 0; calls = 0;",
+                    "  while (i < 5000) {",
+                    "    sum = sum + clamp(abs(i * 7 - 17000), 100, 9000) + max(i % 13, i % 7);",
+                    "    calls = calls + 4;",
+                    "    i = i + 1;",
+                    "  }",
+                    "  print_i(sum); print_c('\\n'); print_i(calls);",
+                    "  return 0;",
+                    "}" },
+            { "accessors", // getters and setters of an array, and structs passed by value
+                    "struct point { int x; int y; };",
+                    "int a[100];",
+                    "int get(int i) { return a[i]; }",
+                    "void set(int i, int v) { a[i] = v; }",
+                    "int dot(struct point p, struct point q) { return p.x * q.x + p.y * q.y; }",
+                    "int main() {",
+                    "  int i; int j; int sum; int calls; struct point p; struct point q;",
+                    "  i = 0; calls = 0; sum = 0;",
+                    "  while (i < 100) { set(i, i * 3); calls = calls + 1; i = i + 1; }",
+                    "  j = 0;",
+                    "  while (j < 50) {",
+                    "    i = 1;",
+                    "    while (i < 100) {",
+                    "      p.x = get(i); p.y = get(i - 1); q.x = j; q.y = i;",
+                    "      sum = sum + dot(p, q) % 1000;",
+                    "      calls = calls + 3;",
+                    "      i = i + 1;",
+                    "    }",
+                    "    j = j + 1;",
+                    "  }",
+                    "  print_i(sum); print_c('\\n'); print_i(calls);",
+                    "  return 0;",
+                    "}" },
+            { "layered", // functions made leaves by inlining their callees, inlined in turn
+                    "int twice(int x) { return x + x; }",
+                    "int square(int x) { return x * x; }",
+                    "int poly(int x) { return square(x) + twice(x) + 1; }",
+                    "int main() {",
+                    "  int i; int sum; int calls;",
+                    "  i = 0; sum = 0; calls = 0;",
+                    "  while (i < 5000) {",
+                    "    sum = (sum + poly(i % 100)) % 100000;",
+                    "    calls = calls + 3;",
+                    "    i = i + 1;",
+                    "  }",
+                    "  print_i(sum); print_c('\\n'); print_i(calls);",
+                    "  return 0;",
+                    "}" },
+            { "recursive", // a recursive function is not inlined, the leaf it calls is
+                    "int add(int a, int b) { return a + b; }",
+                    "int fib(int n) { if (n < 2) return n; return add(fib(n - 1), fib(n - 2)); }",
+                    "int main() {",
+                    "  print_i(fib(18)); print_c('\\n'); print_i(4180);",
+                    "  return 0;",
+                    "}" },
+    };
+
+    public static void main(String[] args) throws Exception {
+        File mars = new File(args.length > 0 ? args[0] : "desc/part3/Mars4_5.jar");
+        long steps = args.length > 1 ? Long.parseLong(args[1]) : 100000000;
+
+        Set<Optimization> inlined = EnumSet.allOf(Optimization.class);
+        Set<Optimization> called = EnumSet.allOf(Optimization.class);
+        called.remove(Optimization.INLINE);
+        File noInput = new File("");
+
+        System.out.printf("%-10s %12s %11s %14s %14s %13s %13s%n", "program", "calls", "static", "dynamic -fno",
+                "dynamic", "per call -fno", "per call");
+        boolean failed = false;
+        for (String[] program : PROGRAMS) {
+            File source = File.createTempFile("bench", ".c");
+            source.deleteOnExit();
+            Files.write(source.toPath(), Arrays.asList(program).subList(1, program.length), StandardCharsets.ISO_8859_1);
+
+            MarsBenchmark.Run before = MarsBenchmark.run(source, called, mars, steps, noInput);
+            MarsBenchmark.Run after = MarsBenchmark.run(source, inlined, mars, steps, noInput);
+            if (before == null || after == null || before.limited || after.limited || !before.output.equals(after.output)) {
+                System.out.printf("%-10s failed: does not compile, does not terminate or output differs%n", program[0]);
+                failed = true;
+                continue;
+            }
+
+            // the last line of the output is the number of calls
+            String output = before.output.trim();
+            long calls = Long.parseLong(output.substring(output.lastIndexOf('\n') + 1).trim());
+            System.out.printf("%-10s %12d %5d->%-5d %14d %14d %13.2f %13.2f%n", program[0], calls,
+                    before.staticCount, after.staticCount, before.dynamicCount, after.dynamicCount,
+                    (double) before.dynamicCount / calls, (double) after.dynamicCount / calls);
+        }
+        if (failed)
+            System.exit(1);
+    }
+}
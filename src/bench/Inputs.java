@@ -0,0 +1,99 @@
+package bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds large Mini-C inputs for the benchmarks out of the sources in tests/.
+ */
+class Inputs {
+
+    // concatenates the .c files found in dir until at least size bytes have been written
+    static File repeat(File dir, long size) throws IOException {
+        File[] sources = dir.listFiles((d, name) -> name.endsWith(".c"));
+        if (sources == null || sources.length == 0)
+            throw new IOException("no .c files in " + dir);
+        Arrays.sort(sources);
+
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        for (File source : sources) {
+            chunk.write(Files.readAllBytes(source.toPath()));
+            chunk.write('\n');
+        }
+
+        File output = File.createTempFile("bench", ".c");
+        long written = 0;
+        try (OutputStream stream = new FileOutputStream(output)) {
+            while (written < size) {
+                chunk.writeTo(stream);
+                written += chunk.size();
+            }
+        }
+        return output;
+    }
+
+    // keeps the declarations of source preceding its first function once and repeats its functions until the
+    // output has at least the given number of lines, the result parses as a single (if redundant) program
+    static File scaleFunctions(File source, int lines) throws IOException {
+        List<String> sourceLines = Files.readAllLines(source.toPath(), StandardCharsets.ISO_8859_1);
+        int firstFunction = 0;
+        while (firstFunction < sourceLines.size() && !FUNCTION.matcher(sourceLines.get(firstFunction)).lookingAt())
+            firstFunction++;
+        if (firstFunction == sourceLines.size())
+            throw new IOException("no function declaration in " + source);
+
+        List<String> header = sourceLines.subList(0, firstFunction);
+        List<String> functions = sourceLines.subList(firstFunction, sourceLines.size());
+        List<String> output = new ArrayList<>(header);
+        while (output.size() < lines)
+            output.addAll(functions);
+
+        File file = File.createTempFile("bench", ".c");
+        Files.write(file.toPath(), output, StandardCharsets.ISO_8859_1);
+        return file;
+    }
+
+    // like scaleFunctions, but the functions of every copy after the first one are renamed (name_1, name_2...), as are
+    // their calls, so the result also passes semantic analysis and can be compiled
+    static File scaleProgram(File source, int lines) throws IOException {
+        List<String> sourceLines = Files.readAllLines(source.toPath(), StandardCharsets.ISO_8859_1);
+        int firstFunction = 0;
+        while (firstFunction < sourceLines.size() && !FUNCTION.matcher(sourceLines.get(firstFunction)).lookingAt())
+            firstFunction++;
+        if (firstFunction == sourceLines.size())
+            throw new IOException("no function declaration in " + source);
+
+        List<String> functions = sourceLines.subList(firstFunction, sourceLines.size());
+        StringBuilder names = new StringBuilder();
+        for (String line : functions) {
+            Matcher declaration = FUNCTION_NAME.matcher(line);
+            if (declaration.lookingAt())
+                names.append(names.length() == 0 ? "" : "|").append(declaration.group(1));
+        }
+        Pattern call = Pattern.compile("\\b(" + names + ")(\\s*\\()");
+
+        List<String> output = new ArrayList<>(sourceLines.subList(0, firstFunction));
+        output.addAll(functions);
+        for (int copy = 1; output.size() < lines; copy++) {
+            for (String line : functions)
+                output.add(call.matcher(line).replaceAll("$1_" + copy + "$2"));
+        }
+
+        File file = File.createTempFile("bench", ".c");
+        Files.write(file.toPath(), output, StandardCharsets.ISO_8859_1);
+        return file;
+    }
+
+    private static final Pattern FUNCTION = Pattern.compile("(int|char|void|struct\\s+\\w+)[\\s*]+\\w+\\s*\\(");
+    private static final Pattern FUNCTION_NAME = Pattern.compile("(?:int|char|void|struct\\s+\\w+)[\\s*]+(\\w+)\\s*\\(");
+}
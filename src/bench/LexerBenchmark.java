@@ -0,0 +1,71 @@
+package bench;
+
+import lexer.MappedScanner;
+import lexer.Scanner;
+import lexer.Token;
+import lexer.Tokeniser;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Measures lexing throughput (MB/s) of the stream Scanner + recursive Tokeniser path
+ * against the MappedScanner + table driven Tokeniser path.
+ *
+ * Usage: java -cp bin bench.LexerBenchmark [input.c] [sizeInMB]
+ * Without an input file the Mini-C sources in tests/ are concatenated until sizeInMB (default 16) is reached.
+ */
+public class LexerBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+
+    private interface ScannerFactory {
+        Scanner open(File file) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File input;
+        if (args.length > 0 && args[0].endsWith(".c")) {
+            input = new File(args[0]);
+        } else {
+            int megabytes = args.length > 0 ? Integer.parseInt(args[args.length - 1]) : 16;
+            input = Inputs.repeat(new File("tests"), megabytes * 1024 * 1024);
+            input.deleteOnExit();
+        }
+
+        long bytes = input.length();
+        System.out.printf("input: %s (%.1f MB)%n", input, bytes / (1024.0 * 1024.0));
+
+        double stream = measure("Scanner + Tokeniser.next", input, Scanner::new);
+        double mapped = measure("MappedScanner + table driven fast path", input, MappedScanner::new);
+        System.out.printf("speedup: %.2fx%n", mapped / stream);
+    }
+
+    private static double measure(String name, File input, ScannerFactory factory) throws IOException {
+        double megabytes = input.length() / (1024.0 * 1024.0);
+        long tokens = 0;
+        for (int i = 0; i < WARMUP; i++)
+            tokens = lex(factory.open(input));
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            lex(factory.open(input));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        double throughput = megabytes / (best / 1e9);
+        System.out.printf("%-40s %8d tokens %8.1f ms %8.1f MB/s%n", name, tokens, best / 1e6, throughput);
+        return throughput;
+    }
+
+    private static long lex(Scanner scanner) throws IOException {
+        Tokeniser tokeniser = new Tokeniser(scanner);
+        long count = 0;
+        for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken())
+            count++;
+        scanner.close();
+        return count;
+    }
+}
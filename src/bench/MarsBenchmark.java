@@ -0,0 +1,162 @@
+package bench;
+
+import ast.Program;
+import gen.CodeGenerator;
+import gen.GenContext;
+import gen.Optimization;
+import lexer.MappedScanner;
+import lexer.Tokeniser;
+import opt.Optimizer;
+import parser.Parser;
+import sem.SemanticAnalyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Regression suite for the optimizations: compiles every valid Mini-C program of a directory (default tests/)
+ * without any optimization (-O0) and with the default ones, runs both in MARS and reports their static and dynamic
+ * (executed) instruction counts. Fails if the output of a program differs between the two.
+ * The standard input of x.c is x.in when there is one. Programs still running after the step limit are reported
+ * as such, their output is compared up to there.
+ *
+ * Usage: java -cp bin bench.MarsBenchmark [directory] [mars.jar] [steps]
+ */
+public class MarsBenchmark {
+
+    private static final Pattern LABEL = Pattern.compile("^\\s*[A-Za-z_][A-Za-z0-9_]*:");
+
+    static final class Run {
+        final int staticCount;
+        final long dynamicCount;
+        final String output;
+        final boolean limited;
+
+        Run(int staticCount, long dynamicCount, String output, boolean limited) {
+            this.staticCount = staticCount;
+            this.dynamicCount = dynamicCount;
+            this.output = output;
+            this.limited = limited;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : "tests");
+        File mars = new File(args.length > 1 ? args[1] : "desc/part3/Mars4_5.jar");
+        long steps = args.length > 2 ? Long.parseLong(args[2]) : 10000000;
+
+        File[] sources = dir.listFiles((d, name) -> name.endsWith(".c"));
+        if (sources == null || sources.length == 0)
+            throw new IOException("no .c files in " + dir);
+        Arrays.sort(sources);
+
+        System.out.printf("%-20s %10s %10s %14s %14s %8s%n", "program", "static -O0", "static", "dynamic -O0", "dynamic", "dynamic%");
+        long totalBefore = 0;
+        long totalAfter = 0;
+        List<String> failures = new ArrayList<>();
+        for (File source : sources) {
+            String name = source.getName().substring(0, source.getName().length() - 2);
+            File input = new File(dir, name + ".in");
+
+            Run before = run(source, EnumSet.noneOf(Optimization.class), mars, steps, input);
+            if (before == null)
+                continue; // does not compile
+            Run after = run(source, EnumSet.allOf(Optimization.class), mars, steps, input);
+
+            boolean same = before.limited || after.limited
+                    ? before.output.startsWith(after.output) || after.output.startsWith(before.output)
+                    : before.output.equals(after.output);
+            if (!same)
+                failures.add(name);
+
+            System.out.printf("%-20s %10d %10d %14s %14s %7.1f%%%s%n", name, before.staticCount, after.staticCount,
+                    count(before), count(after), 100.0 * after.dynamicCount / before.dynamicCount,
+                    same ? "" : "  OUTPUT DIFFERS");
+            if (!before.limited && !after.limited) {
+                totalBefore += before.dynamicCount;
+                totalAfter += after.dynamicCount;
+            }
+        }
+
+        System.out.printf("%-20s %10s %10s %14d %14d %7.1f%%%n", "total (terminating)", "", "", totalBefore, totalAfter,
+                100.0 * totalAfter / totalBefore);
+        if (!failures.isEmpty()) {
+            System.out.println("output differs for: " + failures);
+            System.exit(1);
+        }
+    }
+
+    private static String count(Run run) {
+        return run.limited ? ">" + run.dynamicCount : Long.toString(run.dynamicCount);
+    }
+
+    // compiles source with the given optimizations and runs it, null if it does not compile
+    static Run run(File source, Set<Optimization> optimizations, File mars, long steps, File input)
+            throws IOException, InterruptedException {
+        PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+        Parser parser = new Parser(new Tokeniser(new MappedScanner(source), quiet), quiet);
+        Program program = parser.parse();
+        if (parser.getErrorCount() != 0 || new SemanticAnalyzer(quiet).analyze(program) != 0)
+            return null;
+
+        File assembly = File.createTempFile("bench", ".s");
+        assembly.deleteOnExit();
+        new Optimizer(optimizations).optimize(program);
+        new CodeGenerator().emitProgram(program, assembly, new GenContext(null, optimizations));
+
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        ProcessBuilder builder = new ProcessBuilder(java, "-jar", mars.getPath(), "nc", "ic", Long.toString(steps),
+                assembly.getPath()).redirectErrorStream(true);
+        if (input.isFile())
+            builder.redirectInput(input);
+        Process process = builder.start();
+        if (!input.isFile())
+            process.getOutputStream().close();
+        String output;
+        try (InputStream stream = process.getInputStream()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = stream.read(buffer); read >= 0; read = stream.read(buffer))
+                bytes.write(buffer, 0, read);
+            output = new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1);
+        }
+        process.waitFor();
+
+        // MARS ends with a newline, the number of executed instructions and an empty line
+        output = output.replaceAll("\\s+$", "");
+        int lastLine = output.lastIndexOf('\n');
+        long dynamicCount = Long.parseLong(output.substring(lastLine + 1).trim());
+        output = lastLine < 0 ? "" : output.substring(0, lastLine);
+        boolean limited = output.contains("maximum step limit");
+        if (limited)
+            output = output.substring(0, output.lastIndexOf("Program terminated"));
+
+        return new Run(staticCount(assembly), dynamicCount, output, limited);
+    }
+
+    // lines holding an instruction, rather than only labels, comments or directives
+    private static int staticCount(File assembly) throws IOException {
+        int count = 0;
+        for (String line : Files.readAllLines(assembly.toPath(), StandardCharsets.ISO_8859_1)) {
+            line = LABEL.matcher(line).replaceFirst("");
+            int comment = line.indexOf('#');
+            if (comment >= 0)
+                line = line.substring(0, comment);
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("."))
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import lexer.MappedScanner;
+import lexer.TokenBuffer;
+import lexer.Tokeniser;
+import parser.Parser;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Measures parsing throughput (lines/s) on a tests/tictactoe.c style input, both pulling tokens from the
+ * Tokeniser while parsing and parsing a TokenBuffer lexed beforehand (the lexing time is not included then).
+ *
+ * Usage: java -cp bin bench.ParserBenchmark [input.c] [lines]
+ * The functions of the input (default tests/tictactoe.c) are repeated until lines (default 100000) is reached.
+ */
+public class ParserBenchmark {
+
+    private static final int WARMUP = 5;
+    private static final int RUNS = 10;
+
+    private interface Parse {
+        int run() throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File source = new File(args.length > 0 && args[0].endsWith(".c") ? args[0] : "tests/tictactoe.c");
+        int lines = args.length > 0 && !args[args.length - 1].endsWith(".c") ? Integer.parseInt(args[args.length - 1]) : 100000;
+
+        File input = Inputs.scaleFunctions(source, lines);
+        input.deleteOnExit();
+        System.out.printf("input: %s scaled to %d lines (%.1f MB)%n", source, lines, input.length() / (1024.0 * 1024.0));
+
+        measure("Tokeniser + Parser", lines, () -> {
+            Parser parser = new Parser(new Tokeniser(new MappedScanner(input)));
+            parser.parse();
+            return parser.getErrorCount();
+        });
+
+        TokenBuffer tokens = new Tokeniser(new MappedScanner(input)).tokenise();
+        measure("TokenBuffer + Parser", lines, () -> {
+            Parser parser = new Parser(tokens);
+            parser.parse();
+            return parser.getErrorCount();
+        });
+    }
+
+    private static void measure(String name, int lines, Parse parse) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            if (parse.run() != 0)
+                throw new IllegalStateException(name + ": the benchmark input does not parse");
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            parse.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf("%-30s %8.1f ms %10.0f lines/s%n", name, best / 1e6, lines / (best / 1e9));
+    }
+}
@@ -0,0 +1,54 @@
+package bench;
+
+import ast.Block;
+import ast.Program;
+import lexer.MappedScanner;
+import lexer.Tokeniser;
+import parser.Parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Parses a generated program with a single function holding a very long block (100000 statements by default)
+ * on the default thread stack, and checks that every statement ends up in the AST.
+ *
+ * Usage: java -cp bin bench.ParserStressTest [statements]
+ */
+public class ParserStressTest {
+
+    public static void main(String[] args) throws IOException {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        File input = File.createTempFile("stress", ".c");
+        input.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(input, "US-ASCII")) {
+            writer.println("int x;");
+            writer.println("void main() {");
+            writer.println("  int i;");
+            for (int i = 0; i < statements; i++) {
+                switch (i % 4) {
+                    case 0: writer.println("  i = " + i + ";"); break;
+                    case 1: writer.println("  x = x + i * 2;"); break;
+                    case 2: writer.println("  if (x > i) x = i; else { x = x - 1; }"); break;
+                    default: writer.println("  print_i(x);"); break;
+                }
+            }
+            writer.println("}");
+        }
+
+        long start = System.nanoTime();
+        Parser parser = new Parser(new Tokeniser(new MappedScanner(input)));
+        Program program = parser.parse();
+        long elapsed = System.nanoTime() - start;
+
+        if (parser.getErrorCount() != 0)
+            throw new IllegalStateException(parser.getErrorCount() + " parsing errors");
+        Block body = program.funDecls.get(0).block;
+        if (body.statements.size() != statements)
+            throw new IllegalStateException("expected " + statements + " statements, parsed " + body.statements.size());
+
+        System.out.printf("parsed %d statements in one block in %.1f ms%n", statements, elapsed / 1e6);
+    }
+}
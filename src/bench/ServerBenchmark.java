@@ -0,0 +1,104 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Compares compiling every .c file of a directory (default tests/) with a fresh "java Main -gen" process per file
+ * against sending the same compilations to a single "java Main -server" process, which keeps the compiler
+ * loaded and JIT compiled between requests. Both are measured from outside, the way a build would see them.
+ *
+ * Usage: java -cp bin bench.ServerBenchmark [directory] [rounds] [port]
+ */
+public class ServerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : "tests");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 7151;
+
+        File[] sources = dir.listFiles((d, name) -> name.endsWith(".c"));
+        if (sources == null || sources.length == 0)
+            throw new IOException("no .c files in " + dir);
+        Arrays.sort(sources);
+
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        String classpath = System.getProperty("java.class.path");
+        File output = File.createTempFile("bench", ".s");
+        output.deleteOnExit();
+        // what the compilers print is not part of the measurement
+        File log = File.createTempFile("bench", ".log");
+        log.deleteOnExit();
+
+        long cold = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (File source : sources) {
+                long start = System.nanoTime();
+                Process process = new ProcessBuilder(java, "-cp", classpath, "Main", "-gen",
+                        source.getAbsolutePath(), output.getAbsolutePath())
+                        .redirectErrorStream(true).redirectOutput(log).start();
+                process.waitFor();
+                cold += System.nanoTime() - start;
+            }
+        }
+
+        Process server = new ProcessBuilder(java, "-cp", classpath, "Main", "-server", Integer.toString(port))
+                .redirectErrorStream(true).redirectOutput(log).start();
+        try {
+            awaitServer(port);
+            // the first requests pay for class loading and JIT compilation, as a cold process does every time
+            long first = request(port, sources[0], output);
+
+            long warm = 0;
+            for (int round = 0; round < rounds; round++)
+                for (File source : sources)
+                    warm += request(port, source, output);
+
+            int compilations = rounds * sources.length;
+            System.out.printf("%d files, %d rounds%n", sources.length, rounds);
+            System.out.printf("cold process per file: %8.2f ms/file%n", cold / 1e6 / compilations);
+            System.out.printf("server, first request: %8.2f ms%n", first / 1e6);
+            System.out.printf("server, warm:          %8.2f ms/file%n", warm / 1e6 / compilations);
+        } finally {
+            server.destroy();
+            server.waitFor();
+        }
+    }
+
+    private static void awaitServer(int port) throws Exception {
+        for (int attempt = 0; attempt < 200; attempt++) {
+            try {
+                new Socket(InetAddress.getLoopbackAddress(), port).close();
+                return;
+            } catch (ConnectException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IOException("compile server did not start on port " + port);
+    }
+
+    // sends one compilation to the server (see CompileServer) and returns how long it took until the exit line
+    private static long request(int port, File source, File output) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        long start = System.nanoTime();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), charset);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), charset))) {
+            out.write("-gen\t" + source.getAbsolutePath() + "\t" + output.getAbsolutePath() + "\n");
+            out.flush();
+            for (String line = in.readLine(); line != null; line = in.readLine())
+                if (line.startsWith("exit "))
+                    break;
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,110 @@
+package bench;
+
+import gen.Optimization;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Checks that self tail calls (-ftail-calls, see TextVisitor.tailCall) run in constant stack space: each program
+ * recurses deeper than the MARS stack allows a frame per call for, and has to print what Java computes here with
+ * the default optimizations, and with those moving $sp around blocks and calls (-fno-frame-layout
+ * -fno-save-clobbered). With -fno-tail-calls they are expected to run out of stack, which is only reported.
+ *
+ * Usage: java -cp bin bench.TailCallStressTest [mars.jar] [steps]
+ */
+public class TailCallStressTest {
+
+    private static final String[][] PROGRAMS = {
+            { "sum", // an accumulator in a register
+                    "int sum(int n, int acc) { if (n == 0) return acc; return sum(n - 1, acc + n % 7); }",
+                    "int main() { print_i(sum(1000000, 0)); return 0; }" },
+            { "fibonacci", // parameters swapped, the arguments read the parameters they replace
+                    "int fib(int n, int a, int b) { if (n == 0) return a; return fib(n - 1, b, (a + b) % 1000007); }",
+                    "int main() { print_i(fib(500000, 0, 1)); return 0; }" },
+            { "chars", // char parameters, kept in their stack slots
+                    "int alternate(char c, int n, int as) {",
+                    "  if (n == 0) return as;",
+                    "  if (c == 'a') return alternate('b', n - 1, as + 1);",
+                    "  return alternate('a', n - 1, as);",
+                    "}",
+                    "int main() { print_i(alternate('a', 300001, 0)); return 0; }" },
+            { "blocks", // the tail call leaves a block with an array of its own
+                    "int walk(int n, int acc) {",
+                    "  {",
+                    "    int a[4];",
+                    "    a[n % 4] = n % 3;",
+                    "    if (n > 0) return walk(n - 1, acc + a[n % 4]);",
+                    "  }",
+                    "  return acc;",
+                    "}",
+                    "int main() { print_i(walk(400000, 0)); return 0; }" },
+    };
+
+    private static String expected(String name) {
+        long value = 0;
+        switch (name) {
+            case "sum":
+                for (int n = 1; n <= 1000000; n++)
+                    value += n % 7;
+                break;
+            case "fibonacci":
+                long a = 0, b = 1;
+                for (int n = 0; n < 500000; n++) {
+                    long next = (a + b) % 1000007;
+                    a = b;
+                    b = next;
+                }
+                value = a;
+                break;
+            case "chars":
+                value = (300001 + 1) / 2;
+                break;
+            case "blocks":
+                for (int n = 1; n <= 400000; n++)
+                    value += n % 3;
+                break;
+        }
+        return Long.toString(value);
+    }
+
+    public static void main(String[] args) throws Exception {
+        File mars = new File(args.length > 0 ? args[0] : "desc/part3/Mars4_5.jar");
+        long steps = args.length > 1 ? Long.parseLong(args[1]) : 100000000;
+
+        Set<Optimization> all = EnumSet.allOf(Optimization.class);
+        Set<Optimization> movingSp = EnumSet.allOf(Optimization.class);
+        movingSp.remove(Optimization.FRAME_LAYOUT);
+        movingSp.remove(Optimization.SAVE_CLOBBERED);
+        Set<Optimization> recursing = EnumSet.allOf(Optimization.class);
+        recursing.remove(Optimization.TAIL_CALLS);
+        File noInput = new File("");
+
+        boolean failed = false;
+        for (String[] program : PROGRAMS) {
+            File source = File.createTempFile("stress", ".c");
+            source.deleteOnExit();
+            Files.write(source.toPath(), Arrays.asList(program).subList(1, program.length), StandardCharsets.ISO_8859_1);
+            String expected = expected(program[0]);
+
+            for (Set<Optimization> optimizations : Arrays.asList(all, movingSp)) {
+                MarsBenchmark.Run run = MarsBenchmark.run(source, optimizations, mars, steps, noInput);
+                boolean passed = run != null && !run.limited && run.output.trim().equals(expected);
+                String flags = optimizations == all ? "default" : "-fno-frame-layout -fno-save-clobbered";
+                System.out.printf("%-10s %-38s %s%n", program[0], flags, passed ? "ok, " + run.dynamicCount + " instructions"
+                        : "FAILED, expected " + expected + (run == null ? "" : " got " + run.output.trim()));
+                failed |= !passed;
+            }
+
+            MarsBenchmark.Run run = MarsBenchmark.run(source, recursing, mars, steps, noInput);
+            boolean overflows = run != null && !run.output.trim().equals(expected);
+            System.out.printf("%-10s %-38s %s%n", program[0], "-fno-tail-calls", overflows ? "runs out of stack" : "does not run out of stack");
+        }
+        if (failed)
+            System.exit(1);
+    }
+}
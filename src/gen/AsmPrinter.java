@@ -0,0 +1,65 @@
+package gen;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Renders the instructions recorded by OutputWriter as assembly text. The text is built in a buffer which is
+ * handed to the writer once it is large enough, the writer is only flushed at the start of a section and at the end.
+ */
+public class AsmPrinter {
+    private static final int width = 4;
+    private static final int DRAIN_SIZE = 1 << 16;
+    private static final String[] INDENTATION = new String[16];
+    static {
+        INDENTATION[0] = "";
+        for (int i = 1; i < INDENTATION.length; i++)
+            INDENTATION[i] = INDENTATION[i - 1] + "    ".substring(0, width);
+    }
+
+    private final PrintWriter writer;
+    private final StringBuilder buffer = new StringBuilder(DRAIN_SIZE + 256);
+
+    public AsmPrinter(PrintWriter writer) {
+        this.writer = writer;
+    }
+
+    public void print(List<Instruction> instructions) {
+        for (Instruction instruction : instructions) {
+            if (instruction.opcode == Opcode.SECTION)
+                flush();
+            print(instruction);
+            if (buffer.length() >= DRAIN_SIZE) {
+                writer.append(buffer);
+                buffer.setLength(0);
+            }
+        }
+        flush();
+    }
+
+    private void print(Instruction instruction) {
+        if (instruction.opcode == Opcode.BLANK) {
+            buffer.append('\n');
+            return;
+        }
+
+        int indent = Math.max(0, instruction.indentLevel);
+        if (indent < INDENTATION.length) {
+            buffer.append(INDENTATION[indent]);
+        } else {
+            for (int i = 0; i < indent * width; i++)
+                buffer.append(' ');
+        }
+
+        if (instruction.label != null)
+            buffer.append(instruction.label).append(": ");
+        instruction.appendTo(buffer);
+        buffer.append('\n');
+    }
+
+    private void flush() {
+        writer.append(buffer);
+        buffer.setLength(0);
+        writer.flush();
+    }
+}
@@ -2,12 +2,9 @@ package gen;
 
 import ast.*;
 
-import javax.rmi.PortableRemoteObject;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.EmptyStackException;
-import java.util.Stack;
 
 public class CodeGenerator {
 
@@ -16,18 +13,26 @@ public class CodeGenerator {
     public static int allignTo4Bytes(int size) { return (size + 3) / 4 * 4; }
 
     public void emitProgram(Program program, File outputFile) throws FileNotFoundException {
-        PrintWriter writer = new PrintWriter(outputFile);
+        emitProgram(program, outputFile, new GenContext());
+    }
 
-        Helper.writer = new OutputWriter(writer);
-        Helper.registers = new Registers();
+    public void emitProgram(Program program, File outputFile, GenContext context) throws FileNotFoundException {
+        PrintWriter writer = new PrintWriter(outputFile);
+        emitProgram(program, writer, context);
+        writer.close();
+    }
 
-        Helper.dataVisitor = new DataVisitor();
-        Helper.textVisitor = new TextVisitor();
-        Helper.preDefinedVisitor = new PreDefinedVisitor();
+    // The context must not be shared with another program. With a pool in the context, the functions are generated
+    // in parallel and their code is written in declaration order, the output is the same either way.
+    public void emitProgram(Program program, PrintWriter writer, GenContext context) {
+        OutputWriter output = new OutputWriter(context.getLabels());
 
-        program.accept(Helper.dataVisitor);
-        program.accept(Helper.textVisitor);
+        // struct layouts are computed lazily, do it before they can be used from several threads
+        for (StructTypeDecl std : program.structTypeDecls)
+            std.sizeOf();
 
-        writer.close();
+        program.accept(new DataVisitor(context, output));
+        program.accept(new TextVisitor(context, output));
+        new AsmPrinter(writer).print(output.getInstructions());
     }
 }
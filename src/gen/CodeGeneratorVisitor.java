@@ -69,6 +69,16 @@ public abstract class CodeGeneratorVisitor<T> implements ASTVisitor<T> {
         return null;
     }
 
+    @Override
+    public T visitInlinedCallExpr(InlinedCallExpr ic) {
+        ic.call.accept(this);
+        for (VarDecl vd : ic.params)
+            vd.accept(this);
+        ic.block.accept(this);
+
+        return null;
+    }
+
     @Override
     public T visitStructType(StructType st) { return null; }
 
@@ -7,13 +7,17 @@ import java.util.List;
 import static gen.CodeGenerator.allignTo4Bytes;
 
 public class DataVisitor extends CodeGeneratorVisitor<Void> {
-    private OutputWriter writer;
+    private final GenContext context;
+    private final OutputWriter writer;
 
-    private Labeller strLabel = new Labeller("str");
-    private Labeller globalLabel = new Labeller("g");
+    private final Labeller strLabel;
+    private final Labeller globalLabel;
 
-    public DataVisitor() {
-        this.writer = Helper.writer;
+    public DataVisitor(GenContext context, OutputWriter writer) {
+        this.context = context;
+        this.writer = writer;
+        this.strLabel = new Labeller(context.getLabels(), "str");
+        this.globalLabel = new Labeller(context.getLabels(), "g");
     }
 
     @Override
@@ -50,10 +54,10 @@ public class DataVisitor extends CodeGeneratorVisitor<Void> {
         // Label the entire struct
         String name = globalLabel.addLabel(varDecl.varName);
         varDecl.setGlobalName(name);
-        writer.withLabel(name).printf("");
+        writer.withLabel(name).labelLine();
 
         // Prep varName to be a suffix
-        Labeller labeller = new Labeller("s_" + varDecl.varName);
+        Labeller labeller = new Labeller(context.getLabels(), "s_" + varDecl.varName);
 
         try (OutputWriter scope = writer.scope()) {
             for (VarDecl vd : structType.std.variables) {
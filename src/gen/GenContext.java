@@ -0,0 +1,36 @@
+package gen;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Everything shared by the code generated for one program: the labels it uses, how its functions get generated
+ * and which optimizations are applied.
+ * Nothing else in gen is both static and mutable, so each compilation with a context of its own can run
+ * concurrently with the others.
+ */
+public class GenContext {
+    private final LabelTable labels = new LabelTable();
+    private final ForkJoinPool pool;
+    private final Set<Optimization> optimizations;
+
+    public GenContext() { this(null); }
+
+    // functions are generated in parallel on the pool, unless it is null
+    public GenContext(ForkJoinPool pool) { this(pool, EnumSet.allOf(Optimization.class)); }
+
+    public GenContext(ForkJoinPool pool, Set<Optimization> optimizations) {
+        this.pool = pool;
+        Set<Optimization> enabled = EnumSet.noneOf(Optimization.class);
+        enabled.addAll(optimizations);
+        this.optimizations = Collections.unmodifiableSet(enabled);
+    }
+
+    public LabelTable getLabels() { return labels; }
+
+    public ForkJoinPool getPool() { return pool; }
+
+    public boolean isEnabled(Optimization optimization) { return optimizations.contains(optimization); }
+}
@@ -1,11 +0,0 @@
-package gen;
-
-public class Helper {
-    // I can't program in Java :(
-    // How can I pass reference to global objects otherwise?
-    static OutputWriter writer;
-    static Registers registers;
-    static DataVisitor dataVisitor;
-    static TextVisitor textVisitor;
-    static PreDefinedVisitor preDefinedVisitor;
-}
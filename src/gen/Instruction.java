@@ -0,0 +1,196 @@
+package gen;
+
+/**
+ * One line of the generated assembly, as recorded by OutputWriter and rendered by AsmPrinter.
+ * Only the operands used by the format of the opcode are set, the others are null (or 0).
+ */
+public class Instruction {
+    public final Opcode opcode;
+    public final Register r1;
+    public final Register r2;
+    public final Register r3;
+    public final int immediate;
+    public final String target;     // label operand of branches and jumps (where jr is known to go, if it is)
+    public final String text;       // text of comments, sections and strings
+
+    public final String label;      // label of the line, or null
+    public final int indentLevel;
+
+    Instruction(Opcode opcode, Register r1, Register r2, Register r3, int immediate, String target, String text,
+                String label, int indentLevel) {
+        this.opcode = opcode;
+        this.r1 = r1;
+        this.r2 = r2;
+        this.r3 = r3;
+        this.immediate = immediate;
+        this.target = target;
+        this.text = text;
+        this.label = label;
+        this.indentLevel = indentLevel;
+    }
+
+    // r2 and r3 are only ever read, r1 is either read or written
+
+    public boolean readsFirst() {
+        switch (opcode.format) {
+            case R:
+                return opcode == Opcode.JR;
+            case DIV:
+            case STORE:
+            case BRANCH_ZERO:
+            case BRANCH:
+                return true;
+            case RL:
+                return opcode != Opcode.LA;
+            default:
+                return false;
+        }
+    }
+
+    public boolean writesFirst() {
+        return r1 != null && !readsFirst();
+    }
+
+    // whether the instruction reads register r, including the registers read implicitly by jal and syscall
+    public boolean reads(Register r) {
+        switch (opcode.format) {
+            case RRR:
+                return r.is(r2) || r.is(r3);
+            case RRI:
+            case RR:
+            case LOAD:
+                return r.is(r2);
+            case R:
+                return opcode == Opcode.JR && r.is(r1);
+            case DIV:
+            case STORE:
+            case BRANCH:
+                return r.is(r1) || r.is(r2);
+            case BRANCH_ZERO:
+                return r.is(r1);
+            case RL:
+                return opcode != Opcode.LA && r.is(r1);
+            case L:
+                // the arguments are passed on the stack, the callee saves and restores the registers it uses
+                return opcode == Opcode.JAL && (isArgument(r) || r.is(Register.sp) || r.is(Register.fp) || r.is(Register.gp));
+            case NONE:
+                return opcode == Opcode.SYSCALL && (isArgument(r) || r.is(Register.v0));
+            default:
+                return false;
+        }
+    }
+
+    // whether the instruction overwrites register r
+    public boolean writes(Register r) {
+        switch (opcode.format) {
+            case RRR:
+            case RRI:
+            case RI:
+            case RR:
+            case LOAD:
+                return r.is(r1);
+            case R:
+                return opcode != Opcode.JR && r.is(r1);
+            case RL:
+                return opcode == Opcode.LA && r.is(r1);
+            case L:
+                return opcode == Opcode.JAL && (r.is(Register.ra) || r.is(Register.v0));
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isArgument(Register r) {
+        for (Register argument : Register.paramRegs) {
+            if (r.is(argument))
+                return true;
+        }
+        return false;
+    }
+
+    // copies with some of the fields replaced, for the passes rewriting the instructions
+
+    Instruction withRegisters(Register r1, Register r2, Register r3) {
+        return new Instruction(opcode, r1, r2, r3, immediate, target, text, label, indentLevel);
+    }
+
+    Instruction withImmediate(Opcode opcode, Register r2, int immediate) {
+        return new Instruction(opcode, r1, r2, r3, immediate, target, text, label, indentLevel);
+    }
+
+    Instruction withLabel(String label) {
+        return new Instruction(opcode, r1, r2, r3, immediate, target, text, label, indentLevel);
+    }
+
+    // what is left of this line when its instruction is removed: its label, if any
+    Instruction removed() {
+        if (label == null)
+            return null;
+        return new Instruction(Opcode.LABEL, null, null, null, 0, null, null, label, indentLevel);
+    }
+
+    // appends the line without its indentation, label and newline
+    public void appendTo(StringBuilder out) {
+        Opcode.Format format = opcode.format;
+        out.append(opcode.mnemonic);
+        switch (format) {
+            case NONE:
+            case BLANK:
+                break;
+            case R:
+                out.append(' ').append(r1);
+                break;
+            case RR:
+                out.append(' ').append(r1).append(", ").append(r2);
+                break;
+            case RRR:
+                out.append(' ').append(r1).append(", ").append(r2).append(", ").append(r3);
+                break;
+            case RRI:
+                out.append(' ').append(r1).append(", ").append(r2).append(", ").append(immediate);
+                break;
+            case RI:
+                out.append(' ').append(r1).append(", ").append(immediate);
+                break;
+            case DIV:
+                out.append(' ').append(r1).append(' ').append(r2);
+                break;
+            case LOAD:
+                out.append(' ').append(r1).append(", ").append(immediate).append('(').append(r2).append(')');
+                break;
+            case STORE:
+                out.append(' ').append(r1).append(' ').append(immediate).append('(').append(r2).append(')');
+                break;
+            case BRANCH_ZERO:
+                out.append(' ').append(r1).append(", $zero, ").append(target);
+                break;
+            case BRANCH:
+                out.append(' ').append(r1).append(", ").append(r2).append(", ").append(target);
+                break;
+            case RL:
+                out.append(' ').append(r1).append(", ").append(target);
+                break;
+            case L:
+                out.append(' ').append(target);
+                break;
+            case I:
+                out.append(' ').append(immediate);
+                break;
+            case STRING:
+                out.append(" \"").append(text).append('"');
+                break;
+            case TEXT:
+                if (opcode != Opcode.SECTION)
+                    out.append(' ');
+                out.append(text);
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        appendTo(out);
+        return out.toString();
+    }
+}
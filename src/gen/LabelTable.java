@@ -0,0 +1,24 @@
+package gen;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All the labels generated during one compilation.
+ * Functions may be generated concurrently, so labels can be added from several threads.
+ */
+public class LabelTable {
+    private final Set<String> labels = ConcurrentHashMap.newKeySet();
+
+    public void add(String label) {
+        if (!labels.add(label)) {
+            throw new RuntimeException("Duplicate label has been generated - " + label + " - (try increasing the number of leading zeros)");
+        }
+    }
+
+    public void verify(String label) {
+        if (!labels.contains(label)) {
+            throw new RuntimeException("Attempting to use a label that has not been created yet!");
+        }
+    }
+}
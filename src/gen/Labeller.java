@@ -1,43 +1,48 @@
 package gen;
 
-import java.util.*;
-
 public class Labeller {
+    private final LabelTable labels;
     private String label;
     private int count = 0;
-    private static Set<String> labels = new HashSet<>();
     private static final int leadingZeros = 9;
 
-    public Labeller (String label) { this.label = label; }
+    public Labeller (LabelTable labels, String label) {
+        this.labels = labels;
+        this.label = label;
+    }
 
     public String addLabel(String label) {
         label = this.label + "_" + label;
 
-        if (labels.contains(label)) {
-            throw new RuntimeException("Duplicate label has been generated - " + label + " - (try increasing the number of leading zeros)");
-        }
-
         labels.add(label);
         return label;
     }
 
     public String enumLabel() {
-        String prefix = String.format(String.format("%%0%sd", leadingZeros), count);
+        String prefix = zeroPadded(count);
         count++;
 
         return addLabel(prefix);
     }
 
     public String enumLabel(String context) {
-        String prefix = String.format(String.format("%%s_%%0%sd", leadingZeros), context, count);
+        String prefix = context + "_" + zeroPadded(count);
         count++;
 
         return addLabel(prefix);
     }
 
-    public static void verifyLabel(String prefix) {
-        if (!labels.contains(prefix)) {
-            throw new RuntimeException("Attempting to use a label that has not been created yet!");
+    // same as String.format("%0<leadingZeros>d", count), without parsing a format string for every label
+    private static String zeroPadded(int count) {
+        String digits = Integer.toString(count);
+        if (digits.length() >= leadingZeros) {
+            return digits;
+        }
+
+        StringBuilder padded = new StringBuilder(leadingZeros);
+        for (int i = digits.length(); i < leadingZeros; i++) {
+            padded.append('0');
         }
+        return padded.append(digits).toString();
     }
 }
@@ -0,0 +1,341 @@
+package gen;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Linear scan register allocation of the virtual registers of one function (see Registers).
+ *
+ * The liveness of the virtual registers is computed over the basic blocks of the function, each one is then given
+ * the interval from the first to the last instruction it is live at. The intervals are scanned in order of their
+ * start, each one taking the first free temporary register (so that a function writes as few of them as it can, they
+ * have to be saved), or, when there are none left, the one ending the furthest away is spilled to the stack and read
+ * and written there through $t8 and $t9.
+ *
+ * No register has to be saved around calls: the callee saves every register it uses.
+ */
+class LinearScan {
+    private static final List<Register> allocatable = Register.tmpRegs.subList(0, 16);   // $t0-$t7, $s0-$s7
+    private static final Register[] scratch = { Register.tmpRegs.get(16), Register.tmpRegs.get(17) }; // $t8, $t9
+
+    private final List<Instruction> function;
+    private final int frameOffset;
+
+    private int base = Integer.MAX_VALUE;   // number of the first virtual register of the function
+    private int count = 0;                  // virtual registers of the function, numbered from base
+
+    // one per virtual register, the interval it is live over
+    private Interval[] intervals;
+
+    /**
+     * @param function    the instructions of the function, they are replaced by the allocated ones
+     * @param frameOffset deepest offset from $fp of the frame, the spill slots are below it
+     */
+    LinearScan(List<Instruction> function, int frameOffset) {
+        this.function = function;
+        this.frameOffset = frameOffset;
+    }
+
+    private static class Interval {
+        final int register;     // index of the virtual register
+        int start = Integer.MAX_VALUE;
+        int end = -1;
+        boolean startsWithDef;  // only written (not read, nor live) at start, its register may be one ending there
+
+        Register assigned;      // real register, or null when spilled
+        int slot;               // offset from $fp when spilled
+
+        Interval(int register) {
+            this.register = register;
+        }
+
+        void extend(int position, boolean def) {
+            if (position < start) {
+                start = position;
+                startsWithDef = def;
+            } else if (position == start) {
+                startsWithDef &= def;
+            }
+            end = Math.max(end, position);
+        }
+    }
+
+    // returns the number of spill slots, the frame has to be made larger by as many words
+    int allocate() {
+        for (Instruction instruction : function) {
+            for (Register r : operands(instruction)) {
+                if (r.isVirtual()) {
+                    base = Math.min(base, r.getNumber());
+                    count = Math.max(count, r.getNumber() + 1);
+                }
+            }
+        }
+        if (base == Integer.MAX_VALUE)
+            return 0;
+        count -= base;
+
+        intervals = new Interval[count];
+        for (int i = 0; i < count; i++)
+            intervals[i] = new Interval(i);
+
+        buildIntervals();
+        int spills = scan();
+        rewrite();
+        return spills;
+    }
+
+    private static Register[] operands(Instruction instruction) {
+        if (instruction.r3 != null)
+            return new Register[]{ instruction.r1, instruction.r2, instruction.r3 };
+        if (instruction.r2 != null)
+            return new Register[]{ instruction.r1, instruction.r2 };
+        if (instruction.r1 != null)
+            return new Register[]{ instruction.r1 };
+        return new Register[0];
+    }
+
+    private int index(Register r) {
+        return r.getNumber() - base;
+    }
+
+    // LIVENESS
+
+    private static boolean endsBlock(Instruction instruction) {
+        return instruction.opcode.isBranch() || instruction.opcode == Opcode.B || instruction.opcode == Opcode.JR;
+    }
+
+    private void buildIntervals() {
+        int size = function.size();
+
+        // blocks start at labels and after branches
+        List<Integer> starts = new ArrayList<>();
+        Map<String, Integer> blockOfLabel = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            Instruction instruction = function.get(i);
+            if (i == 0 || instruction.label != null || endsBlock(function.get(i - 1))) {
+                if (starts.isEmpty() || starts.get(starts.size() - 1) != i)
+                    starts.add(i);
+            }
+            if (instruction.label != null)
+                blockOfLabel.put(instruction.label, starts.size() - 1);
+        }
+
+        int blocks = starts.size();
+        int[] first = new int[blocks];
+        int[] last = new int[blocks];
+        for (int b = 0; b < blocks; b++) {
+            first[b] = starts.get(b);
+            last[b] = b + 1 < blocks ? starts.get(b + 1) - 1 : size - 1;
+        }
+
+        // successors, and what each block reads before writing (use) and writes (def)
+        int[][] successors = new int[blocks][];
+        BitSet[] use = new BitSet[blocks];
+        BitSet[] def = new BitSet[blocks];
+        for (int b = 0; b < blocks; b++) {
+            use[b] = new BitSet(count);
+            def[b] = new BitSet(count);
+            for (int i = first[b]; i <= last[b]; i++) {
+                Instruction instruction = function.get(i);
+                for (Register r : reads(instruction)) {
+                    if (!def[b].get(index(r)))
+                        use[b].set(index(r));
+                }
+                Register written = written(instruction);
+                if (written != null)
+                    def[b].set(index(written));
+            }
+
+            Instruction end = function.get(last[b]);
+            // jr goes to its target when known (the epilogue), out of the function otherwise
+            Integer target = endsBlock(end) && end.target != null ? blockOfLabel.get(end.target) : null;
+            boolean fallsThrough = b + 1 < blocks && end.opcode != Opcode.B && end.opcode != Opcode.JR;
+
+            if (target != null && fallsThrough)
+                successors[b] = new int[]{ target, b + 1 };
+            else if (target != null)
+                successors[b] = new int[]{ target };
+            else if (fallsThrough)
+                successors[b] = new int[]{ b + 1 };
+            else
+                successors[b] = new int[0];
+        }
+
+        // backwards dataflow: in = use + (out - def), out = union of the in of the successors
+        BitSet[] liveIn = new BitSet[blocks];
+        BitSet[] liveOut = new BitSet[blocks];
+        for (int b = 0; b < blocks; b++) {
+            liveIn[b] = (BitSet) use[b].clone();
+            liveOut[b] = new BitSet(count);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = blocks - 1; b >= 0; b--) {
+                BitSet out = liveOut[b];
+                for (int s : successors[b])
+                    out.or(liveIn[s]);
+
+                BitSet in = (BitSet) out.clone();
+                in.andNot(def[b]);
+                in.or(use[b]);
+                if (!in.equals(liveIn[b])) {
+                    liveIn[b] = in;
+                    changed = true;
+                }
+            }
+        }
+
+        // the intervals cover everything from the first to the last instruction each register is live at
+        for (int b = 0; b < blocks; b++) {
+            for (int r = liveIn[b].nextSetBit(0); r >= 0; r = liveIn[b].nextSetBit(r + 1))
+                intervals[r].extend(first[b], false);
+            for (int i = first[b]; i <= last[b]; i++) {
+                Instruction instruction = function.get(i);
+                for (Register r : reads(instruction))
+                    intervals[index(r)].extend(i, false);
+                Register written = written(instruction);
+                if (written != null)
+                    intervals[index(written)].extend(i, true);
+            }
+            for (int r = liveOut[b].nextSetBit(0); r >= 0; r = liveOut[b].nextSetBit(r + 1))
+                intervals[r].extend(last[b], false);
+        }
+    }
+
+    // the virtual registers read by the instruction
+    private static List<Register> reads(Instruction instruction) {
+        List<Register> read = new ArrayList<>(2);
+        if (instruction.readsFirst() && instruction.r1.isVirtual())
+            read.add(instruction.r1);
+        if (instruction.r2 != null && instruction.r2.isVirtual())
+            read.add(instruction.r2);
+        if (instruction.r3 != null && instruction.r3.isVirtual())
+            read.add(instruction.r3);
+        return read;
+    }
+
+    // the virtual register written by the instruction, or null
+    private static Register written(Instruction instruction) {
+        return instruction.writesFirst() && instruction.r1.isVirtual() ? instruction.r1 : null;
+    }
+
+    // ALLOCATION
+
+    // gives every interval a register or a spill slot, returns the number of slots
+    private int scan() {
+        List<Interval> unhandled = new ArrayList<>();
+        for (Interval interval : intervals) {
+            if (interval.end >= 0)
+                unhandled.add(interval);
+        }
+        Collections.sort(unhandled, Comparator.comparingInt((Interval interval) -> interval.start));
+
+        List<Interval> active = new ArrayList<>();  // by increasing end
+        List<Register> free = new ArrayList<>(allocatable); // by number
+        Comparator<Register> byNumber = Comparator.comparingInt(Register::getNumber);
+        int spills = 0;
+
+        for (Interval current : unhandled) {
+            // a register is free once its interval has ended, or ends where this one is only written
+            Register hint = null;
+            for (int i = 0; i < active.size(); ) {
+                Interval interval = active.get(i);
+                if (interval.end < current.start || (interval.end == current.start && current.startsWithDef)) {
+                    active.remove(i);
+                    free.add(Collections.binarySearch(free, interval.assigned, byNumber) ^ -1, interval.assigned);
+                    if (isCopy(current.start, interval))
+                        hint = interval.assigned;
+                } else {
+                    i++;
+                }
+            }
+
+            if (!free.isEmpty()) {
+                Register register = hint != null ? hint : free.get(0);
+                free.remove(register);
+                current.assigned = register;
+            } else {
+                // spill whichever of them ends last
+                Interval furthest = active.get(active.size() - 1);
+                if (furthest.end > current.end) {
+                    current.assigned = furthest.assigned;
+                    furthest.assigned = null;
+                    furthest.slot = frameOffset - 4 * (++spills);
+                    active.remove(furthest);
+                } else {
+                    current.slot = frameOffset - 4 * (++spills);
+                    continue;
+                }
+            }
+
+            int at = active.size();
+            while (at > 0 && active.get(at - 1).end > current.end)
+                at--;
+            active.add(at, current);
+        }
+        return spills;
+    }
+
+    // whether the instruction at position copies the register of interval
+    private boolean isCopy(int position, Interval interval) {
+        Instruction instruction = function.get(position);
+        return instruction.opcode == Opcode.MOVE && instruction.r2.isVirtual() && index(instruction.r2) == interval.register;
+    }
+
+    // REWRITING
+
+    private void rewrite() {
+        List<Instruction> allocated = new ArrayList<>(function.size() + 16);
+        for (int i = 0; i < function.size(); i++) {
+            Instruction instruction = function.get(i);
+            if (instruction.r1 == null) {
+                allocated.add(instruction);
+                continue;
+            }
+
+            // spilled registers are loaded into the scratch registers before, and stored after
+            String label = instruction.label;
+            Map<Integer, Register> loaded = new HashMap<>(4);
+            for (Register r : reads(instruction)) {
+                Interval interval = intervals[index(r)];
+                if (interval.assigned == null && !loaded.containsKey(interval.register)) {
+                    Register into = scratch[loaded.size()];
+                    loaded.put(interval.register, into);
+                    allocated.add(new Instruction(Opcode.LW, into, Register.fp, null, interval.slot, null, null, label, instruction.indentLevel));
+                    label = null;
+                }
+            }
+
+            Register written = written(instruction);
+            Interval store = null;
+            if (written != null && intervals[index(written)].assigned == null) {
+                store = intervals[index(written)];
+                if (!loaded.containsKey(store.register))
+                    loaded.put(store.register, scratch[0]);
+            }
+
+            Instruction rewritten = instruction.withRegisters(
+                    real(instruction.r1, loaded), real(instruction.r2, loaded), real(instruction.r3, loaded));
+            allocated.add(label == instruction.label ? rewritten : rewritten.withLabel(label));
+
+            if (store != null)
+                allocated.add(new Instruction(Opcode.SW, loaded.get(store.register), Register.fp, null, store.slot, null, null, null, instruction.indentLevel));
+        }
+
+        function.clear();
+        function.addAll(allocated);
+    }
+
+    private Register real(Register r, Map<Integer, Register> loaded) {
+        if (r == null || !r.isVirtual())
+            return r;
+        Interval interval = intervals[index(r)];
+        return interval.assigned != null ? interval.assigned : loaded.get(interval.register);
+    }
+}
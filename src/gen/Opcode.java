@@ -0,0 +1,104 @@
+package gen;
+
+/**
+ * What an Instruction is: a MIPS instruction, or one of the directives and layout lines of the assembly file.
+ * The format says which operands of the Instruction are used and how they are printed.
+ */
+public enum Opcode {
+    LI("li", Format.RI),
+    LA("la", Format.RL),
+    MOVE("move", Format.RR),
+
+    ADD("add", Format.RRR),
+    ADDI("addi", Format.RRI),
+    SUB("sub", Format.RRR),
+    SUBI("subi", Format.RRI),
+    ADDU("addu", Format.RRR),       // the same without trapping on overflow, as mul
+    SUBU("subu", Format.RRR),
+    ADDIU("addiu", Format.RRI),
+    MUL("mul", Format.RRR),
+    MULI("mul", Format.RRI),
+    DIV("div", Format.DIV),
+    MFHI("mfhi", Format.R),
+    MFLO("mflo", Format.R),
+    SLL("sll", Format.RRI),
+    SRA("sra", Format.RRI),
+    SRL("srl", Format.RRI),
+    ANDI("andi", Format.RRI),
+    XORI("xori", Format.RRI),
+
+    SEQ("seq", Format.RRR),
+    SNE("sne", Format.RRR),
+    SLT("slt", Format.RRR),
+    SGT("sgt", Format.RRR),
+    SLE("sle", Format.RRR),
+    SGE("sge", Format.RRR),
+    SLTU("sltu", Format.RRR),
+    SLTI("slti", Format.RRI),
+    SLTIU("sltiu", Format.RRI),
+
+    LB("lb", Format.LOAD),
+    LW("lw", Format.LOAD),
+    SB("sb", Format.STORE),
+    SW("sw", Format.STORE),
+
+    BEQZ("beq", Format.BRANCH_ZERO),
+    BNEZ("bnez", Format.RL),
+    BGTZ("bgtz", Format.RL),
+    BLTZ("bltz", Format.RL),
+    BGEZ("bgez", Format.RL),
+    BLEZ("blez", Format.RL),
+    BEQ("beq", Format.BRANCH),
+    BNE("bne", Format.BRANCH),
+    B("b", Format.L),
+    JAL("jal", Format.L),
+    JR("jr", Format.R),
+    SYSCALL("syscall", Format.NONE),
+    NOP("nop", Format.NONE),
+
+    // not instructions
+    SECTION(".", Format.TEXT),       // .text, .globl main
+    SPACE(".space", Format.I),
+    ASCIIZ(".asciiz", Format.STRING),
+    COMMENT("#", Format.TEXT),
+    LABEL("", Format.NONE),          // a line holding only its label
+    BLANK("", Format.BLANK);         // an empty line
+
+    public enum Format {
+        NONE,           // op
+        R,              // op r1
+        RR,             // op r1, r2
+        RRR,            // op r1, r2, r3
+        RRI,            // op r1, r2, imm
+        RI,             // op r1, imm
+        DIV,            // op r1 r2
+        LOAD,           // op r1, imm(r2)
+        STORE,          // op r1 imm(r2)
+        BRANCH_ZERO,    // op r1, $zero, target
+        BRANCH,         // op r1, r2, target
+        RL,             // op r1, target
+        L,              // op target
+        I,              // op imm
+        STRING,         // op "text"
+        TEXT,           // op text (. directly followed by the directive)
+        BLANK
+    }
+
+    public final String mnemonic;
+    public final Format format;
+
+    Opcode(String mnemonic, Format format) {
+        this.mnemonic = mnemonic;
+        this.format = format;
+    }
+
+    // whether this assembles to machine code (as opposed to directives, comments and layout)
+    public boolean isCode() {
+        return ordinal() < SECTION.ordinal();
+    }
+
+    // whether this is a conditional branch, which either goes to its target or falls through
+    public boolean isBranch() {
+        return format == Format.BRANCH_ZERO || format == Format.BRANCH || (format == Format.RL && this != LA);
+    }
+}
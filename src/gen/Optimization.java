@@ -0,0 +1,36 @@
+package gen;
+
+/**
+ * The optimizations which can be switched off from the command line, all of them are enabled by default.
+ * Each one is named as in its flag: -fno-peephole disables PEEPHOLE.
+ */
+public enum Optimization {
+    FOLD("fold"),           // constant folding and simplification of the expressions, see opt.ConstantFolder
+    PEEPHOLE("peephole"),   // rewrites of the generated instructions, see Peephole
+    REGALLOC("regalloc"),   // scalar locals and temporaries in virtual registers, given real ones by LinearScan
+    SAVE_CLOBBERED("save-clobbered"), // functions only save the registers they write, below their frame
+    REGISTER_ARGS("register-args"),   // the first four scalar arguments are passed in $a0-$a3
+    STRENGTH_REDUCE("strength-reduce"), // multiplications, divisions and modulos by constants done with shifts
+    IMMEDIATES("immediates"),   // constant operands of additions and comparisons as immediates, not in a register
+    BRANCH_CONDITIONS("branch-conditions"), // conditions of if and while compiled into branches, see TextVisitor.branch
+    BLOCK_COPY("block-copy"),   // structs copied a word at a time rather than field by field
+    FRAME_LAYOUT("frame-layout"), // $sp only moved by the prologue and epilogue, blocks and calls use fixed offsets
+    INLINE("inline"),           // calls of small leaf functions replaced by a copy of their body, see opt.Inliner
+    TAIL_CALLS("tail-calls"),   // a function returning a call of itself jumps back to its body, see TextVisitor.tailCall
+    DEAD_CODE("dead-code");     // statements which cannot run and functions main does not call, see opt.DeadCodeEliminator
+
+    public final String flag;
+
+    Optimization(String flag) {
+        this.flag = flag;
+    }
+
+    // the optimization with the given flag name, or null
+    public static Optimization fromFlag(String flag) {
+        for (Optimization optimization : values()) {
+            if (optimization.flag.equals(flag))
+                return optimization;
+        }
+        return null;
+    }
+}
@@ -1,22 +1,55 @@
 package gen;
 
-import java.io.PrintWriter;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Records the generated assembly as a list of Instructions, along with its layout (indentation, labels and blank
+ * lines), for AsmPrinter to render once the whole program has been generated.
+ */
 public class OutputWriter implements AutoCloseable {
-    private PrintWriter writer;
+    private final LabelTable labels;
+    private final List<Instruction> instructions = new ArrayList<>();
     private int indentLevel = 0;
-    private static final int width = 4;
 
-    private String currentLabel = ""; // current prefix
+    private String currentLabel = null; // label of the next line
     private boolean wasNewline = false;
 
-    public OutputWriter(PrintWriter writer) { this.writer = writer; };
+    public OutputWriter(LabelTable labels) {
+        this.labels = labels;
+    }
+
+    // Writer of its own continuing at the current indentation, its instructions are then added with append().
+    // It starts as if following a newline, append() emits the leading newline in its place if needed.
+    public OutputWriter buffered() {
+        OutputWriter writer = new OutputWriter(labels);
+        writer.indentLevel = indentLevel;
+        writer.wasNewline = true;
+        return writer;
+    }
+
+    // adds the instructions of a buffered() writer, as if they had been written here
+    public void append(OutputWriter buffered) {
+        if (buffered.instructions.isEmpty()) {
+            return;
+        }
+
+        leadNewline();
+        instructions.addAll(buffered.instructions);
+        wasNewline = buffered.wasNewline;
+    }
+
+    // adds the instructions of a buffered() writer before the index-th one, written once what they are is known
+    public void insert(int index, OutputWriter buffered) {
+        instructions.addAll(index, buffered.instructions);
+    }
+
+    public List<Instruction> getInstructions() { return instructions; }
 
     public int getIndentLevel() { return indentLevel; }
 
     public void newline() {
-        writer.printf("\n");
+        instructions.add(new Instruction(Opcode.BLANK, null, null, null, 0, null, null, null, 0));
         wasNewline = true;
     }
 
@@ -39,190 +72,313 @@ public class OutputWriter implements AutoCloseable {
         return this;
     }
 
-    public void printf(String formatString, Object... args) {
-
-        String indentation = new String(new char[Math.max(0, indentLevel * width)]).replace("\0", " ");
+    private void emit(Opcode opcode, Register r1, Register r2, Register r3, int immediate, String target, String text) {
+        instructions.add(new Instruction(opcode, r1, r2, r3, immediate, target, text, currentLabel, indentLevel));
+        currentLabel = null;
+        wasNewline = false;
+    }
 
-        if (!currentLabel.isEmpty()) {
-            currentLabel += ": ";
+    private static String format(String format, Object... args) {
+        for (Object arg : args) {
+            if (arg == null) {
+                String message = String.format("Cannot print with null argument. Would be (see next line, between brackets):\n\n\t[" + format + "]\n\n", args);
+                throw new NullPointerException(message);
+            }
         }
+        return String.format(format, args);
+    }
+
+    private static <T> T operand(Opcode opcode, T operand) {
+        if (operand == null)
+            throw new NullPointerException("Cannot emit " + opcode + " with a null operand");
+        return operand;
+    }
 
-        writer.printf(indentation + currentLabel + formatString, args);
+    // op r1, r2, r3 for the instructions of that format, e.g. the comparisons
+    public void instruction(Opcode opcode, Register r1, Register r2, Register r3) {
+        assert opcode.format == Opcode.Format.RRR;
+        emit(opcode, operand(opcode, r1), operand(opcode, r2), operand(opcode, r3), 0, null, null);
+    }
 
-        if (Arrays.asList(args).contains(null)) {
-            writer.printf("\033[1;31m # <---- cannot print with null argument \033[0m\n");
-            writer.flush();
+    private void instruction(Opcode opcode, Register r1, Register r2, int immediate) {
+        emit(opcode, operand(opcode, r1), operand(opcode, r2), null, immediate, null, null);
+    }
 
-            String message = String.format("Cannot print with null argument. Would be (see next line, between brackets):\n\n\t[" + formatString + "]\n\n", args);
-            throw new NullPointerException(message);
-        }
+    private void instruction(Opcode opcode, Register r1, int immediate) {
+        emit(opcode, operand(opcode, r1), null, null, immediate, null, null);
+    }
 
-        writer.printf("\n");
-        writer.flush();
+    private void instruction(Opcode opcode, Register r1, Register r2) {
+        emit(opcode, operand(opcode, r1), operand(opcode, r2), null, 0, null, null);
+    }
 
-        currentLabel = "";
-        wasNewline = false;
+    private void instruction(Opcode opcode, Register r1) {
+        emit(opcode, operand(opcode, r1), null, null, 0, null, null);
+    }
+
+    private void instruction(Opcode opcode) {
+        emit(opcode, null, null, null, 0, null, null);
+    }
+
+    private void jump(Opcode opcode, Register r1, String target) {
+        emit(opcode, opcode.format == Opcode.Format.L ? null : operand(opcode, r1), null, null, 0, operand(opcode, target), null);
     }
 
     public void newSection(String section, Object... objects) {
         leadNewline();
-        printf("." + section, objects);
+        emit(Opcode.SECTION, null, null, null, 0, null, format(section, objects));
     }
 
     public void comment(Object object) { comment("%s", object); }
 
     public void comment(String format, Object... objects) {
         leadNewline();
-        printf("# " + format, objects);
+        emit(Opcode.COMMENT, null, null, null, 0, null, format(format, objects));
     }
 
     public OutputWriter withLabel(String label) {
-        if (!this.currentLabel.isEmpty()) {
+        if (this.currentLabel != null) {
             throw new RuntimeException("withLabel overwritten");
         }
         this.currentLabel = label;
         return this;
     }
 
+    // a line holding only the label given by withLabel
+    public void labelLine() {
+        instruction(Opcode.LABEL);
+    }
+
     // .space 4
     public void dataNeedSize(int size) {
-        printf(".space %d", size);
+        emit(Opcode.SPACE, null, null, null, size, null, null);
     }
 
     // .asciiz "Hello, world!" # (trailing nul byte)
     public void dataAsciiNullTerminated(String s) {
-        printf(".asciiz \"%s\"", s);
+        emit(Opcode.ASCIIZ, null, null, null, 0, null, operand(Opcode.ASCIIZ, s));
     }
 
     // syscall
-    public void syscall() { printf("syscall"); }
+    public void syscall() { instruction(Opcode.SYSCALL); }
 
     // load immediate: li $register, 1
     public void li(Register r, int i) {
-        printf("li %s, %d", r, i);
+        instruction(Opcode.LI, r, i);
     }
 
     // load address from label: la $register, some_global
     public void la(Register r, String label) {
-        Labeller.verifyLabel(label);
-        printf("la %s, %s", r, label);
+        labels.verify(label);
+        jump(Opcode.LA, r, label);
     }
     // no operation
     public void nop() {
-        printf("nop");
+        instruction(Opcode.NOP);
     }
 
     // add
     public void add(Register value, Register x, Register y) {
-        printf("add %s, %s, %s", value, x, y);
+        instruction(Opcode.ADD, value, x, y);
     }
 
     // addi
     public void add(Register value, Register x, int y) {
-        printf("addi %s, %s, %d", value, x, y);
+        instruction(Opcode.ADDI, value, x, y);
+    }
+
+    // addiu: value = x + i, wrapping around on overflow
+    public void addiu(Register value, Register x, int i) {
+        instruction(Opcode.ADDIU, value, x, i);
     }
 
     // sub: value = x - y
     public void sub(Register value, Register x, Register y) {
-        printf("sub %s, %s, %s", value, x, y);
+        instruction(Opcode.SUB, value, x, y);
     }
 
     // subi: value = $x - i
     public void sub(Register value, Register x, int i) {
-        printf("subi %s, %s, %d", value, x, i);
+        instruction(Opcode.SUBI, value, x, i);
+    }
+
+    // addu: value = x + y, wrapping around on overflow
+    public void addu(Register value, Register x, Register y) {
+        instruction(Opcode.ADDU, value, x, y);
+    }
+
+    // subu: value = x - y, wrapping around on overflow
+    public void subu(Register value, Register x, Register y) {
+        instruction(Opcode.SUBU, value, x, y);
+    }
+
+    // shift left logical: value = x << shift
+    public void sll(Register value, Register x, int shift) {
+        instruction(Opcode.SLL, value, x, shift);
+    }
+
+    // shift right arithmetic: value = x >> shift
+    public void sra(Register value, Register x, int shift) {
+        instruction(Opcode.SRA, value, x, shift);
+    }
+
+    // shift right logical: value = x >>> shift
+    public void srl(Register value, Register x, int shift) {
+        instruction(Opcode.SRL, value, x, shift);
+    }
+
+    // andi: value = x & mask, the mask being zero-extended from 16 bits
+    public void andi(Register value, Register x, int mask) {
+        instruction(Opcode.ANDI, value, x, mask);
+    }
+
+    // xori: value = x ^ mask, the mask being zero-extended from 16 bits
+    public void xori(Register value, Register x, int mask) {
+        instruction(Opcode.XORI, value, x, mask);
+    }
+
+    // set less than immediate: value = x < i
+    public void slti(Register value, Register x, int i) {
+        instruction(Opcode.SLTI, value, x, i);
+    }
+
+    // set less than immediate unsigned: value = x < i, both taken as unsigned
+    public void sltiu(Register value, Register x, int i) {
+        instruction(Opcode.SLTIU, value, x, i);
+    }
+
+    // set less than unsigned: value = x < y, both taken as unsigned
+    public void sltu(Register value, Register x, Register y) {
+        instruction(Opcode.SLTU, value, x, y);
     }
 
     // seq: value = x == y
     public void seq(Register value, Register x, Register y) {
-        printf("seq %s, %s, %s", value, x, y);
+        instruction(Opcode.SEQ, value, x, y);
     }
 
     // sne: value = x != y
     public void sne(Register value, Register x, Register y) {
-        printf("sne %s, %s, %s", value, x, y);
+        instruction(Opcode.SNE, value, x, y);
     }
 
     // mul: value = x * y (with some weird HI LO behaviour lol)
     public void mul(Register value, Register x, Register y) {
-        printf("mul %s, %s, %s", value, x, y);
+        instruction(Opcode.MUL, value, x, y);
     }
 
     // mul: value = x * y (with some weird HI LO behaviour lol)
     public void mul(Register value, Register x, int y) {
-        printf("mul %s, %s, %d", value, x, y);
+        instruction(Opcode.MULI, value, x, y);
     }
 
     // load byte: lb $target, $offset($from)
     public void lb(Register target, Register from, int offset) {
-        printf("lb %s, %d(%s)", target, offset, from);
+        instruction(Opcode.LB, target, from, offset);
     }
 
     // load word: lw $target, $offset($from)
     public void lw(Register target, Register from, int offset) {
-        printf("lw %s, %d(%s)", target, offset, from);
+        instruction(Opcode.LW, target, from, offset);
     }
 
     // move: move $target, $from
     public void move(Register target, Register from) {
-        printf("move %s, %s", target, from);
+        instruction(Opcode.MOVE, target, from);
     }
 
     // store word: sw $from, offset($target)
     public void sw(Register from, Register target, int offset) {
-        printf("sw %s %d(%s)", from, offset, target);
+        instruction(Opcode.SW, from, target, offset);
     }
 
     // store byte: sw $from, offset($target)
     public void sb(Register from, Register target, int offset) {
-        printf("sb %s %d(%s)", from, offset, target);
+        instruction(Opcode.SB, from, target, offset);
     }
 
     // divide: div $number, $dividedBy (lo = quotient, hi = remainder)
     public void div(Register number, Register dividedBy) {
-        printf("div %s %s", number, dividedBy);
+        instruction(Opcode.DIV, number, dividedBy);
     }
 
     // move from hi to target: mfhi $target
     public void mfhi(Register target) {
-        printf("mfhi %s", target);
+        instruction(Opcode.MFHI, target);
     }
 
     // move from lo to target: mflo $target
     public void mflo(Register target) {
-        printf("mflo %s", target);
+        instruction(Opcode.MFLO, target);
     }
 
     // branch if equal zero: beq $x, $zero, label
     public void beqz(Register value, String label) {
-        Labeller.verifyLabel(label);
-        printf("beq %s, $zero, %s", value, label);
+        labels.verify(label);
+        jump(Opcode.BEQZ, value, label);
     }
 
     // branch if not equal zero: bnez $x, label
     public void bnez(Register value, String label) {
-        Labeller.verifyLabel(label);
-        printf("bnez %s, %s", value, label);
+        labels.verify(label);
+        jump(Opcode.BNEZ, value, label);
     }
 
     // branch if greater than zero: bgtz $x, label
     public void bgtz(Register value, String label) {
-        Labeller.verifyLabel(label);
-        printf("bgtz %s, %s", value, label);
+        labels.verify(label);
+        jump(Opcode.BGTZ, value, label);
+    }
+
+    // branch if less than zero: bltz $x, label
+    public void bltz(Register value, String label) {
+        labels.verify(label);
+        jump(Opcode.BLTZ, value, label);
+    }
+
+    // branch if greater or equal to zero: bgez $x, label
+    public void bgez(Register value, String label) {
+        labels.verify(label);
+        jump(Opcode.BGEZ, value, label);
+    }
+
+    // branch if less or equal to zero: blez $x, label
+    public void blez(Register value, String label) {
+        labels.verify(label);
+        jump(Opcode.BLEZ, value, label);
+    }
+
+    // branch if equal: beq $x, $y, label
+    public void beq(Register x, Register y, String label) {
+        labels.verify(label);
+        emit(Opcode.BEQ, operand(Opcode.BEQ, x), operand(Opcode.BEQ, y), null, 0, label, null);
+    }
+
+    // branch if not equal: bne $x, $y, label
+    public void bne(Register x, Register y, String label) {
+        labels.verify(label);
+        emit(Opcode.BNE, operand(Opcode.BNE, x), operand(Opcode.BNE, y), null, 0, label, null);
     }
 
     // branch to label: b label
     public void b(String label) {
-        Labeller.verifyLabel(label);
-        printf("b %s", label);
+        labels.verify(label);
+        jump(Opcode.B, null, label);
     }
 
     // jump register unconditionally: jr $target
     public void jr(Register register) {
-        printf("jr %s", register);
+        instruction(Opcode.JR, register);
+    }
+
+    // jump register known to hold the address of label: jr $target
+    public void jr(Register register, String label) {
+        labels.verify(label);
+        emit(Opcode.JR, operand(Opcode.JR, register), null, null, 0, label, null);
     }
 
     public void jal(String genLabel) {
-        printf("jal %s", genLabel);
+        jump(Opcode.JAL, null, genLabel);
     }
 
 }
@@ -0,0 +1,429 @@
+package gen;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites the generated instructions a few at a time, until none of the rewrites applies any more:
+ *   * removes nops, moves to the same register and additions of 0,
+ *   * makes subi (two instructions) an addi of the negated immediate,
+ *   * removes instructions whose result is never read,
+ *   * folds chains of addi/subi on a register ($sp, or the struct addresses of storeValue) into one, moving them past
+ *     the loads and stores based on that register,
+ *   * fuses an address computed by addi into the offset of the load or store (or addi) using it,
+ *   * writes a result straight into the register it is then moved to,
+ *   * reads the source of a move instead of its copy, when the copy is read only once,
+ *   * replaces a load of the word which has just been stored by a move,
+ *   * turns the jr of a return into a branch to the epilogue,
+ *   * removes branches to the next instruction and the code following an unconditional jump up to the next label.
+ * Whether a register is still read is found by following the instructions (and branches) from there: registers are
+ * considered read by the jr of the epilogue, their value could be needed by the caller. Unless the saved registers
+ * are to be restored before it, then only the result ($v0), $sp and $ra are.
+ */
+public class Peephole {
+    private static final int MAX_ROUNDS = 16;
+    private static final int LIVENESS_STEPS = 4096; // followed instructions before a register is assumed to be live
+
+    private final List<Instruction> code; // a removed instruction is null, or the line of its label
+    private final Map<String, Integer> labels = new HashMap<>();
+    private int[] visited = new int[0]; // the lines followed by isLive are those marked with the current query
+    private int query = 0;
+    private final boolean restoredOnReturn;
+
+    public Peephole(List<Instruction> instructions) {
+        this(instructions, false);
+    }
+
+    public Peephole(List<Instruction> instructions, boolean restoredOnReturn) {
+        this.code = new ArrayList<>(instructions);
+        this.restoredOnReturn = restoredOnReturn;
+    }
+
+    public List<Instruction> optimize() {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            labels.clear();
+            visited = new int[code.size()];
+            query = 0;
+            for (int i = 0; i < code.size(); i++) {
+                if (code.get(i).label != null)
+                    labels.put(code.get(i).label, i);
+            }
+
+            boolean changed = false;
+            for (int i = 0; i < code.size(); i++) {
+                Instruction instruction = code.get(i);
+                if (instruction != null && instruction.opcode.isCode())
+                    changed |= rewrite(i, instruction);
+            }
+
+            List<Instruction> compacted = new ArrayList<>(code.size());
+            for (Instruction instruction : code) {
+                if (instruction != null)
+                    compacted.add(instruction);
+            }
+            code.clear();
+            code.addAll(compacted);
+
+            if (!changed)
+                break;
+        }
+        return code;
+    }
+
+    private boolean rewrite(int i, Instruction instruction) {
+        switch (instruction.opcode) {
+            case NOP:
+                remove(i);
+                return true;
+            case MOVE:
+                if (instruction.r1.is(instruction.r2)) {
+                    remove(i);
+                    return true;
+                }
+                return forwardResult(i, instruction) || propagateCopy(i, instruction) || removeIfDead(i, instruction);
+            case SUBI:
+                // subi is two instructions (its immediate is loaded into $at first), addi of the negation is one
+                code.set(i, addImmediate(instruction, instruction.r1, instruction.r2, signedImmediate(instruction)));
+                return true;
+            case ADDI:
+                if (instruction.r1.is(instruction.r2)) {
+                    if (instruction.immediate == 0) {
+                        remove(i);
+                        return true;
+                    }
+                    return foldIncrement(i, instruction) || removeIfDead(i, instruction);
+                }
+                return fuseAddress(i, instruction) || forwardResult(i, instruction) || removeIfDead(i, instruction);
+            case SW:
+                return forwardStore(i, instruction);
+            case B:
+                return removeBranchToNext(i, instruction) || removeUnreachable(i);
+            case JR:
+                if (instruction.target != null) {
+                    code.set(i, new Instruction(Opcode.B, null, null, null, 0, instruction.target, null, instruction.label, instruction.indentLevel));
+                    return true;
+                }
+                return removeUnreachable(i);
+            default:
+                if (instruction.opcode.isBranch())
+                    return removeBranchToNext(i, instruction);
+                if (isPure(instruction.opcode))
+                    return forwardResult(i, instruction) || removeIfDead(i, instruction);
+                return false;
+        }
+    }
+
+    // instructions which only write their first register (from the others)
+    private static boolean isPure(Opcode opcode) {
+        switch (opcode) {
+            case LI: case LA: case MOVE:
+            case ADD: case ADDI: case SUB: case SUBI: case MUL: case MULI: case MFHI: case MFLO:
+            case ADDU: case SUBU: case ADDIU: case SLL: case SRA: case SRL: case ANDI: case XORI:
+            case SLTU: case SLTI: case SLTIU:
+            case SEQ: case SNE: case SLT: case SGT: case SLE: case SGE:
+            case LB: case LW:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isControlFlow(Opcode opcode) {
+        return opcode.isBranch() || opcode == Opcode.B || opcode == Opcode.JAL || opcode == Opcode.JR;
+    }
+
+    // instructions a rewrite cannot move r across, syscall may write $v0
+    private static boolean isBarrier(Instruction instruction, Register r) {
+        return isControlFlow(instruction.opcode) || instruction.opcode == Opcode.SYSCALL && r.is(Register.v0);
+    }
+
+    // the k of addi r1, r2, k doing what the instruction does, subtracting MIN_VALUE is adding it (it has no negation)
+    private static int signedImmediate(Instruction instruction) {
+        if (instruction.opcode != Opcode.SUBI)
+            return instruction.immediate;
+        return instruction.immediate == Integer.MIN_VALUE ? Integer.MIN_VALUE : -instruction.immediate;
+    }
+
+    // addi r1, r2, k
+    private static Instruction addImmediate(Instruction instruction, Register r1, Register r2, int k) {
+        return instruction.withImmediate(Opcode.ADDI, r2, k).withRegisters(r1, r2, null);
+    }
+
+    private static boolean fitsOffset(int offset) {
+        return offset >= Short.MIN_VALUE && offset <= Short.MAX_VALUE;
+    }
+
+    private void remove(int i) {
+        code.set(i, code.get(i).removed());
+    }
+
+    // the next instruction run right after the one at i when there is no other way into it (no label), -1 otherwise
+    private int nextInBlock(int i) {
+        for (int j = i + 1; j < code.size(); j++) {
+            Instruction instruction = code.get(j);
+            if (instruction == null)
+                continue;
+            if (instruction.label != null)
+                return -1;
+            if (instruction.opcode.isCode())
+                return j;
+        }
+        return -1;
+    }
+
+    // whether the value of r at the start of the line at from may still be read
+    private boolean isLive(int from, Register r) {
+        Deque<Integer> work = new ArrayDeque<>();
+        int steps = LIVENESS_STEPS;
+        query++;
+        work.push(from);
+        while (!work.isEmpty()) {
+            int i = work.pop();
+            for (; i < code.size() && visited[i] != query; i++) {
+                visited[i] = query;
+                if (--steps < 0)
+                    return true;
+
+                Instruction instruction = code.get(i);
+                if (instruction == null || !instruction.opcode.isCode())
+                    continue;
+                if (instruction.reads(r) || instruction.opcode == Opcode.JR && (instruction.target != null || isReadOnReturn(r)))
+                    return true;
+                if (instruction.writes(r) || instruction.opcode == Opcode.JR)
+                    break;
+
+                if (instruction.opcode == Opcode.B || instruction.opcode.isBranch()) {
+                    Integer target = labels.get(instruction.target);
+                    if (target == null)
+                        return true;
+                    work.push(target);
+                    if (instruction.opcode == Opcode.B)
+                        break;
+                }
+            }
+            if (i >= code.size())
+                return true;
+        }
+        return false;
+    }
+
+    private boolean isReadOnReturn(Register r) {
+        return !restoredOnReturn || r.is(Register.v0) || r.is(Register.sp) || r.is(Register.ra) || r.is(Register.gp);
+    }
+
+    private boolean removeIfDead(int i, Instruction instruction) {
+        if (isLive(i + 1, instruction.r1))
+            return false;
+        remove(i);
+        return true;
+    }
+
+    // addi r, r, k ... (loads and stores based on r) ... addi r, r, k2  =>  ... (offsets + k) ... addi r, r, k + k2
+    // the increment disappears if r is not read after the loads and stores
+    private boolean foldIncrement(int i, Instruction instruction) {
+        Register r = instruction.r1;
+        int k = signedImmediate(instruction);
+        List<Integer> based = new ArrayList<>();
+
+        int j = i;
+        int stop;
+        while (true) {
+            int next = nextInBlock(j);
+            if (next < 0) {
+                stop = j + 1;
+                break;
+            }
+            j = next;
+
+            Instruction x = code.get(j);
+            boolean isMemory = x.opcode.format == Opcode.Format.LOAD || x.opcode.format == Opcode.Format.STORE;
+            if (isMemory && x.r2.is(r) && !x.r1.is(r) && fitsOffset(x.immediate + k)) {
+                based.add(j);
+                continue;
+            }
+            if ((x.opcode == Opcode.ADDI || x.opcode == Opcode.SUBI) && x.r1.is(r) && x.r2.is(r)) {
+                int total = k + signedImmediate(x);
+                shiftOffsets(based, k);
+                if (total == 0)
+                    remove(j);
+                else
+                    code.set(j, addImmediate(x, r, r, total));
+                remove(i);
+                return true;
+            }
+            if (isBarrier(x, r) || x.reads(r) || x.writes(r)) {
+                stop = j;
+                break;
+            }
+        }
+
+        if (based.isEmpty() || isLive(stop, r))
+            return false;
+        shiftOffsets(based, k);
+        remove(i);
+        return true;
+    }
+
+    private void shiftOffsets(List<Integer> based, int k) {
+        for (int j : based) {
+            Instruction x = code.get(j);
+            code.set(j, x.withImmediate(x.opcode, x.r2, x.immediate + k));
+        }
+    }
+
+    // addi t, b, k ... lw x, offset(t)  =>  ... lw x, offset + k(b)  when t is not read afterwards
+    // (likewise for the other loads and stores based on t, and for addi x, t, k2)
+    private boolean fuseAddress(int i, Instruction instruction) {
+        Register t = instruction.r1;
+        Register b = instruction.r2;
+        int k = signedImmediate(instruction);
+
+        int j = i;
+        while (true) {
+            j = nextInBlock(j);
+            if (j < 0)
+                return false;
+
+            Instruction x = code.get(j);
+            if (isBarrier(x, t) || isBarrier(x, b))
+                return false;
+            if (!x.reads(t)) {
+                if (x.writes(t) || x.writes(b))
+                    return false;
+                continue;
+            }
+
+            Instruction fused;
+            switch (x.opcode.format) {
+                case LOAD:
+                    if (!x.r2.is(t) || !fitsOffset(x.immediate + k))
+                        return false;
+                    fused = x.withImmediate(x.opcode, b, x.immediate + k);
+                    break;
+                case STORE:
+                    if (x.r1.is(t) || !fitsOffset(x.immediate + k))
+                        return false;
+                    fused = x.withImmediate(x.opcode, b, x.immediate + k);
+                    break;
+                case RRI:
+                    if (x.opcode != Opcode.ADDI && x.opcode != Opcode.SUBI)
+                        return false;
+                    fused = addImmediate(x, x.r1, b, signedImmediate(x) + k);
+                    break;
+                default:
+                    return false;
+            }
+
+            if (!x.writes(t) && isLive(j + 1, t))
+                return false;
+            code.set(j, fused);
+            remove(i);
+            return true;
+        }
+    }
+
+    // op t, ...; move y, t  =>  op y, ...  when t is not read afterwards
+    private boolean forwardResult(int i, Instruction instruction) {
+        int j = nextInBlock(i);
+        if (j < 0)
+            return false;
+
+        Instruction move = code.get(j);
+        Register t = instruction.r1;
+        if (move.opcode != Opcode.MOVE || !move.r2.is(t) || move.r1.is(t) || isLive(j + 1, t))
+            return false;
+
+        code.set(i, instruction.withRegisters(move.r1, instruction.r2, instruction.r3));
+        remove(j);
+        return true;
+    }
+
+    // move t, s ... op x, t  =>  ... op x, s  when t is not read afterwards
+    private boolean propagateCopy(int i, Instruction move) {
+        Register t = move.r1;
+        Register s = move.r2;
+
+        int j = i;
+        while (true) {
+            j = nextInBlock(j);
+            if (j < 0)
+                return false;
+
+            // a conditional branch may read the copy, t then has to be dead on both of its ways out
+            Instruction x = code.get(j);
+            boolean readingBranch = x.opcode.isBranch() && x.reads(t);
+            if (!readingBranch && (isBarrier(x, t) || isBarrier(x, s)))
+                return false;
+            if (!x.reads(t)) {
+                if (x.writes(t) || x.writes(s))
+                    return false;
+                continue;
+            }
+
+            Instruction copied = x.withRegisters(
+                    x.readsFirst() && x.r1.is(t) ? s : x.r1, t.is(x.r2) ? s : x.r2, t.is(x.r3) ? s : x.r3);
+            if (copied.reads(t))
+                return false;
+            code.set(j, copied);
+            if (isLive(j, t)) {
+                code.set(j, x);
+                return false;
+            }
+            remove(i);
+            return true;
+        }
+    }
+
+    // sw x, k(b); lw y, k(b)  =>  sw x, k(b); move y, x
+    private boolean forwardStore(int i, Instruction store) {
+        int j = nextInBlock(i);
+        if (j < 0)
+            return false;
+
+        Instruction load = code.get(j);
+        if (load.opcode != Opcode.LW || !load.r2.is(store.r2) || load.immediate != store.immediate)
+            return false;
+
+        if (load.r1.is(store.r1))
+            remove(j);
+        else
+            code.set(j, new Instruction(Opcode.MOVE, load.r1, store.r1, null, 0, null, null, load.label, load.indentLevel));
+        return true;
+    }
+
+    private boolean removeBranchToNext(int i, Instruction branch) {
+        for (int j = i + 1; j < code.size(); j++) {
+            Instruction instruction = code.get(j);
+            if (instruction == null)
+                continue;
+            if (branch.target.equals(instruction.label)) {
+                remove(i);
+                return true;
+            }
+            if (instruction.opcode.isCode())
+                return false;
+        }
+        return false;
+    }
+
+    // nothing can run the instructions following b or jr before the next label
+    private boolean removeUnreachable(int i) {
+        boolean changed = false;
+        for (int j = i + 1; j < code.size(); j++) {
+            Instruction instruction = code.get(j);
+            if (instruction == null)
+                continue;
+            if (instruction.label != null)
+                break;
+            if (instruction.opcode.isCode()) {
+                code.set(j, null);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
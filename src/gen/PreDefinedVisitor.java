@@ -1,138 +1,148 @@
 package gen;
 
 import ast.*;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.function.BiFunction;
+import java.util.Map;
 
 public class PreDefinedVisitor extends CodeGeneratorVisitor<Register> {
-    private static OutputWriter writer;
-
-    private static HashMap<String, BiFunction<FunDecl, List<Expr>, Register>> predefinedFunctions = null;
-
-    public PreDefinedVisitor() {
-        this.writer = Helper.writer;
-
-        if (predefinedFunctions == null) {
-            // Initialise predefined functions
-            PreDefinedVisitor.predefinedFunctions = new HashMap<>();
-            PreDefinedVisitor.predefinedFunctions.put("print_s", PreDefinedVisitor::print_s);
-            PreDefinedVisitor.predefinedFunctions.put("print_i", PreDefinedVisitor::print_i);
-            PreDefinedVisitor.predefinedFunctions.put("print_c", PreDefinedVisitor::print_c);
-            PreDefinedVisitor.predefinedFunctions.put("read_c", PreDefinedVisitor::read_c);
-            PreDefinedVisitor.predefinedFunctions.put("read_i", PreDefinedVisitor::read_i);
-            PreDefinedVisitor.predefinedFunctions.put("mcmalloc", PreDefinedVisitor::mcmalloc);
-        }
+    private final OutputWriter writer;
+    private final Registers registers;
+    private final TextVisitor textVisitor;
+
+    private interface PreDefinedFunction {
+        Register apply(PreDefinedVisitor visitor, FunDecl fd, List<Expr> args);
+    }
+
+    // shared by all visitors, so never modified after initialisation
+    private static final Map<String, PreDefinedFunction> predefinedFunctions;
+    static {
+        Map<String, PreDefinedFunction> functions = new HashMap<>();
+        functions.put("print_s", PreDefinedVisitor::print_s);
+        functions.put("print_i", PreDefinedVisitor::print_i);
+        functions.put("print_c", PreDefinedVisitor::print_c);
+        functions.put("read_c", PreDefinedVisitor::read_c);
+        functions.put("read_i", PreDefinedVisitor::read_i);
+        functions.put("mcmalloc", PreDefinedVisitor::mcmalloc);
+        predefinedFunctions = Collections.unmodifiableMap(functions);
     }
 
-    private static Register get_register(FunDecl fd, List<Expr> args) {
+    // generates the calls made by textVisitor, with its writer and registers
+    public PreDefinedVisitor(OutputWriter writer, Registers registers, TextVisitor textVisitor) {
+        this.writer = writer;
+        this.registers = registers;
+        this.textVisitor = textVisitor;
+    }
+
+    private Register get_register(FunDecl fd, List<Expr> args) {
         int reg = ((IntLiteral) args.get(0)).value;
-        Register val = Helper.registers.get();
+        Register val = registers.get();
         writer.comment("get_register %d", reg);
-        writer.printf("move %s, $%d", val, reg);
+        writer.move(val, Register.numbered(reg));
         return val;
     }
 
-    private static Register print_i(FunDecl fd, List<Expr> args) {
+    private Register print_i(FunDecl fd, List<Expr> args) {
         Expr arg = args.get(0);
 
         writer.comment("$a0 = %s", arg);
         try (OutputWriter scope = writer.scope()) {
             if (arg instanceof IntLiteral) {
                 // this is left here for efficiency. removing this will just make an extra intermediary register.
-                Helper.writer.li(Register.paramRegs[0], ((IntLiteral) arg).value);
+                writer.li(Register.paramRegs[0], ((IntLiteral) arg).value);
             } else {
-                try (Register val = arg.accept(Helper.textVisitor)) {
+                try (Register val = arg.accept(textVisitor)) {
                     writer.comment("$a0 = %s", val);
-                    Register.paramRegs[0].set(val);
+                    writer.move(Register.paramRegs[0], val);
                 }
             }
         }
 
         writer.comment("print_i($a0)");
-        Register.v0.loadImmediate(1);
-        Helper.writer.syscall();
+        writer.li(Register.v0, 1);
+        writer.syscall();
 
         return null;
     }
 
-    private static Register print_s(FunDecl fd, List<Expr> args) {
+    private Register print_s(FunDecl fd, List<Expr> args) {
         Expr arg = args.get(0);
 
         writer.comment("$a0 = %s", arg);
-        try (OutputWriter scope = writer.scope(); Register val = arg.accept(Helper.textVisitor)) {
+        try (OutputWriter scope = writer.scope(); Register val = arg.accept(textVisitor)) {
             writer.comment("$a0 = %s", val);
-            Register.paramRegs[0].set(val);
+            writer.move(Register.paramRegs[0], val);
         }
 
         writer.comment("print_s($a0)");
-        Register.v0.loadImmediate(4);
+        writer.li(Register.v0, 4);
         writer.syscall();
         return null;
     }
 
-    private static Register read_i(FunDecl fd, List<Expr> args) {
+    private Register read_i(FunDecl fd, List<Expr> args) {
         writer.comment("$v0 = read_i()");
         // Call syscall 5 - this sets the read integer to v0
-        Register.v0.loadImmediate(5);
+        writer.li(Register.v0, 5);
         writer.syscall();
 
-        Register value = Helper.registers.get();
-        Register.v0.moveTo(value);
+        Register value = registers.get();
+        writer.move(value, Register.v0);
         return value;
     }
 
-    private static Register mcmalloc(FunDecl fd, List<Expr> args) {
+    private Register mcmalloc(FunDecl fd, List<Expr> args) {
         // Get the bytes required to allocate
         Expr arg = args.get(0);
         writer.comment("$a0 = %s", arg);
-        try (OutputWriter scope = writer.scope(); Register byteCount = arg.accept(Helper.textVisitor)) {
+        try (OutputWriter scope = writer.scope(); Register byteCount = arg.accept(textVisitor)) {
             // Set the argument of the syscall to these bytes
-            Register.paramRegs[0].set(byteCount);
+            writer.move(Register.paramRegs[0], byteCount);
         }
 
         // Call syscall 9 - this puts the address in v0
         writer.comment("mcmalloc($a0)");
-        Register.v0.loadImmediate(9);
+        writer.li(Register.v0, 9);
         writer.syscall();
 
-        Register value = Helper.registers.get();
-        Register.v0.moveTo(value);
+        Register value = registers.get();
+        writer.move(value, Register.v0);
         return value;
     }
 
-    private static Register print_c(FunDecl fd, List<Expr> args) {
+    private Register print_c(FunDecl fd, List<Expr> args) {
         Expr arg = args.get(0);
 
         writer.comment("$a0 = %s", arg);
         try (OutputWriter scope = writer.scope()) {
             if (arg instanceof ChrLiteral) {
                 // this is left here for efficiency. removing this will just make an extra intermediary register.
-                Helper.writer.li(Register.paramRegs[0], ((ChrLiteral) arg).value);
+                writer.li(Register.paramRegs[0], ((ChrLiteral) arg).value);
             } else {
-                try (Register val = arg.accept(Helper.textVisitor)) {
+                try (Register val = arg.accept(textVisitor)) {
                     writer.comment("$a0 = %s", val);
-                    Register.paramRegs[0].set(val);
+                    writer.move(Register.paramRegs[0], val);
                 }
             }
         }
 
         writer.comment("print_c($a0)");
-        Register.v0.loadImmediate(11);
-        Helper.writer.syscall();
+        writer.li(Register.v0, 11);
+        writer.syscall();
 
         return null;
     }
 
-    private static Register read_c(FunDecl fd, List<Expr> args) {
+    private Register read_c(FunDecl fd, List<Expr> args) {
         // Call syscall 12 - this sets the read character to v0
         writer.comment("$v0 = read_c()");
-        Register.v0.loadImmediate(12);
+        writer.li(Register.v0, 12);
         writer.syscall();
 
-        Register value = Helper.registers.get();
+        Register value = registers.get();
         writer.comment("%s = $v0", value);
-        Register.v0.moveTo(value);
+        writer.move(value, Register.v0);
         return value;
     }
 
@@ -149,7 +159,7 @@ public class PreDefinedVisitor extends CodeGeneratorVisitor<Register> {
                 throw new RuntimeException("attempt to call undefined predefined function " + fc.fd.name);
             }
 
-            return predefinedFunctions.get(fc.fd.name).apply(fc.fd, fc.params);
+            return predefinedFunctions.get(fc.fd.name).apply(this, fc.fd, fc.params);
         }
     }
 
@@ -2,6 +2,7 @@ package gen;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -13,6 +14,7 @@ public class Register implements AutoCloseable {
      * definition of registers
      */
 
+    public static final Register zero = new Register(0,"zero");
     public static final Register v0 = new Register(2,"v0");
     public static final Register[] paramRegs = {
             new Register(4,"a0"),
@@ -20,14 +22,16 @@ public class Register implements AutoCloseable {
             new Register(6,"a2"),
             new Register(7,"a3")};
 
-    public static final List<Register> tmpRegs = new ArrayList<Register>();
+    public static final List<Register> tmpRegs;
     static {
+        List<Register> regs = new ArrayList<Register>();
         for (int i=8; i<=15; i++)
-            tmpRegs.add(new Register(i,"t"+(i-8)));
+            regs.add(new Register(i,"t"+(i-8)));
         for (int i=16; i<=23; i++)
-            tmpRegs.add(new Register(i,"s"+(i-16)));
+            regs.add(new Register(i,"s"+(i-16)));
         for (int i=24; i<=25; i++)
-            tmpRegs.add(new Register(i,"t"+(i-24+8)));
+            regs.add(new Register(i,"t"+(i-24+8)));
+        tmpRegs = Collections.unmodifiableList(regs);
     }
 
     public static final Register gp = new Register(28,"gp");
@@ -46,39 +50,82 @@ public class Register implements AutoCloseable {
             gp, sp, fp, ra,
     };
 
-    public static final List<Register> savedRegisters = new ArrayList<>();
+    public static final List<Register> savedRegisters;
     static {
+        List<Register> regs = new ArrayList<>();
+
         // Add all temporaries and unfreeable
-        savedRegisters.addAll(tmpRegs);
-        savedRegisters.addAll(Arrays.asList(unfreeable));
+        regs.addAll(tmpRegs);
+        regs.addAll(Arrays.asList(unfreeable));
 
         // Remove stack pointer though
-        savedRegisters.remove(sp);
+        regs.remove(sp);
 
         // And remove syscall
-        savedRegisters.remove(v0);
+        regs.remove(v0);
+
+        savedRegisters = Collections.unmodifiableList(regs);
     }
 
+    // virtual registers are numbered from there, they are replaced by real ones by LinearScan
+    public static final int FIRST_VIRTUAL = 64;
+
     private final int num;      // register number
     private final String name;  // register name
+    private final String text;  // as printed in the assembly
+    private final Registers owner; // allocator a temporary has been handed out by, null otherwise
 
 
     private Register(int num, String name) {
+        this(num, name, null);
+    }
+
+    private Register(int num, String name, Registers owner) {
         this.num = num;
         this.name = name;
+        this.text = "$"+name;
+        this.owner = owner;
+    }
+
+    // register given by its number, printed as such: $29
+    public static Register numbered(int num) {
+        return new Register(num, Integer.toString(num));
+    }
+
+    // virtual register number index: $vr12
+    static Register virtual(int index, Registers owner) {
+        return new Register(FIRST_VIRTUAL + index, "vr" + index, owner);
+    }
+
+    public boolean isVirtual() { return num >= FIRST_VIRTUAL; }
+
+    // the same register, to be freed back to the given allocator
+    Register ownedBy(Registers owner) {
+        return new Register(num, name, owner);
+    }
+
+    public int getNumber() { return num; }
+
+    // index of this register in paramRegs ($a0 is 0), -1 if it is not an argument register
+    public int paramIndex() {
+        int index = num - paramRegs[0].num;
+        return index >= 0 && index < paramRegs.length ? index : -1;
+    }
+
+    // whether this is the same register as other, whichever allocator either has been handed out by
+    public boolean is(Register other) {
+        return other != null && other.num == num;
     }
 
     public String toString() {
-        return "$"+name;
+        return text;
     }
 
     public void free() {
-        for (Register r : unfreeable) {
-            if (r == this) {
-                throw new RuntimeException("Attempted to free an unfreeable register!");
-            }
+        if (owner == null) {
+            throw new RuntimeException("Attempted to free an unfreeable register!");
         }
-        Helper.registers.free(this);
+        owner.free(this);
     }
 
     // Allows try-with-resources to be used to free registers
@@ -87,32 +134,4 @@ public class Register implements AutoCloseable {
         free();
     }
 
-    public void loadImmediate(int i) { Helper.writer.li(this, i); }
-
-    public void loadAddress(String label) { Helper.writer.la(this, label); }
-
-    public void loadByte(Register fromAddress, int offset) { Helper.writer.lb(this, fromAddress, offset); }
-
-    public void loadWord(Register fromAddress, int offset) { Helper.writer.lw(this, fromAddress, offset); }
-
-    public void storeByteAt(Register toAddress, int offset) { Helper.writer.sb(this, toAddress, offset); }
-
-    public void storeWordAt(Register toAddress, int offset) { Helper.writer.sw(this, toAddress, offset); }
-
-    public void set(Register fromAddress) { Helper.writer.move(this, fromAddress); }
-
-    public void moveTo(Register toAddress) { Helper.writer.move(toAddress, this); }
-
-    public void jump() { Helper.writer.jr(this); }
-
-    public void add(int i) { Helper.writer.add(this, this, i); }
-
-    public void add(Register register) { Helper.writer.add(this, this, register); }
-
-    public void sub(int i) { Helper.writer.sub(this, this, i); }
-
-    public void sub(Register register) { Helper.writer.sub(this, this, register); }
-
-    public void mul(int multiplier) { Helper.writer.mul(this, this, multiplier); }
-
 }
@@ -5,18 +5,33 @@ import java.util.*;
 public class Registers {
     /*
      * Simple register allocator.
+     * Either hands out the temporary registers themselves, or as many virtual registers as needed, which are then
+     * given a real register (or a place on the stack) by LinearScan.
      */
 
     // contains all the free temporary registers
     private Stack<Register> freeRegs = new Stack<Register>();
+    private final boolean virtual;
+    private int virtualCount = 0;
 
     public Registers() {
-        freeRegs.addAll(Register.tmpRegs);
+        this(false);
+    }
+
+    public Registers(boolean virtual) {
+        this.virtual = virtual;
+        if (!virtual) {
+            for (Register r : Register.tmpRegs)
+                freeRegs.add(r.ownedBy(this));
+        }
     }
 
     public static class RegisterAllocationError extends Error {}
 
     public Register get() {
+        if (virtual)
+            return Register.virtual(virtualCount++, this);
+
         try {
             return freeRegs.pop();
         } catch (EmptyStackException ese) {
@@ -24,5 +39,9 @@ public class Registers {
         }
     }
 
-    public void free(Register reg) { freeRegs.push(reg); }
+    // virtual registers are never reused, LinearScan shares the real ones between those not live at the same time
+    public void free(Register reg) {
+        if (!virtual)
+            freeRegs.push(reg);
+    }
 }
@@ -2,61 +2,126 @@ package gen;
 
 import ast.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BiFunction;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static gen.CodeGenerator.allignTo4Bytes;
 
 public class TextVisitor extends CodeGeneratorVisitor<Register> {
-    private OutputWriter writer;
-
-    private Labeller funcLabel = new Labeller("func");
-    private Labeller binopLabel = new Labeller("binop");
-    private Labeller ifLabel = new Labeller("if");
-    private Labeller whileLabel = new Labeller("while");
+    private final GenContext context;
+    private final OutputWriter writer;
+    private final boolean allocate; // locals and temporaries are given virtual registers, see LinearScan
+    private final boolean saveClobbered; // frames hold the registers the function writes, below its locals
+    private final boolean registerArgs;  // scalar arguments in $a0-$a3, see parameterRegister
+    private final boolean strengthReduce; // multiplications, divisions and modulos by constants with shifts
+    private final boolean immediates;     // constant operands of additions and comparisons as immediates
+    private final boolean branchConditions; // conditions of if and while as branches, see branch
+    private final boolean blockCopy;      // structs and arrays copied a word at a time, see copyBlock
+    private final boolean frameLayout;    // the frame holds the locals of every block, $sp is left where it is
+    private final boolean tailCalls;      // self tail calls as jumps, see tailCall
+    private final Registers registers;
+    private final PreDefinedVisitor preDefinedVisitor;
+
+    // the scalar locals (and parameters) kept in a register rather than on the stack
+    private final Map<VarDecl, Register> registerVariables = new HashMap<>();
+
+    private final Labeller funcLabel;
+    // label names are numbered per function, so that they do not depend on the order functions are generated in
+    private Labeller binopLabel;
+    private Labeller ifLabel;
+    private Labeller whileLabel;
+    private Labeller copyLabel;
+    private Labeller inlineLabel;
+    private String epilogueLabel;
+    private FunDecl function;           // the function being generated
+    private String bodyLabel;           // start of its body once the parameters are in place, when it calls itself last
+    private int bodyFrameOffset;        // frameOffset there
+
+    // the innermost inlined call being generated (see InlinedCallExpr), which its return statements jump to the end of
+    private String inlinedEnd = null;
+    private Register inlinedResult;
+    private int inlinedFrameOffset;     // frameOffset once its parameters are allocated
 
     private int frameOffset = 0;
+    private int callSetupSize = 0;      // how far the calls being set up have moved $sp below $fp + frameOffset
+    private int deepestFrameOffset = 0; // lowest frameOffset of the function, its locals are all above
     private final static int prologueSize = 4 * Register.savedRegisters.size();
+    private final static int unrolledCopyWords = 32;   // block copies of up to that many words are unrolled
+    private final static int copyLoopWords = 8;        // words copied per iteration by the loop of larger ones
 
-    private static Map<Op, BiFunction<Register,Register,Register>> comparisonFunctions = null;
-    private static Map<Op, String> comparators = new HashMap<Op, String>() {{
-        put(Op.LT, "slt");
-        put(Op.GT, "sgt");
-        put(Op.LE, "sle");
-        put(Op.GE, "sge");
-        put(Op.ADD, "add");
-        put(Op.SUB, "sub");
-        put(Op.EQ, "seq");
-        put(Op.NE, "sne");
-    }};
-
-    public TextVisitor() {
-        this.writer = Helper.writer;
+    private interface Operation {
+        Register apply(TextVisitor visitor, Register lhs, Register rhs);
+    }
 
-        if (comparisonFunctions == null) {
+    // shared by all visitors, so never modified after initialisation
+    private static final Map<Op, Operation> comparisonFunctions;
+    private static final Map<Op, Opcode> comparators;
+    static {
+        Map<Op, Operation> functions = new EnumMap<>(Op.class);
+        functions.put(Op.MUL, TextVisitor::mul);
+        functions.put(Op.MOD, TextVisitor::mod);
+        functions.put(Op.DIV, TextVisitor::div);
+        comparisonFunctions = Collections.unmodifiableMap(functions);
+
+        Map<Op, Opcode> instructions = new EnumMap<>(Op.class);
+        instructions.put(Op.LT, Opcode.SLT);
+        instructions.put(Op.GT, Opcode.SGT);
+        instructions.put(Op.LE, Opcode.SLE);
+        instructions.put(Op.GE, Opcode.SGE);
+        instructions.put(Op.ADD, Opcode.ADD);
+        instructions.put(Op.SUB, Opcode.SUB);
+        instructions.put(Op.EQ, Opcode.SEQ);
+        instructions.put(Op.NE, Opcode.SNE);
+        comparators = Collections.unmodifiableMap(instructions);
+    }
 
-            comparisonFunctions = new HashMap<>();
-            comparisonFunctions.put(Op.MUL, TextVisitor::mul);
-            comparisonFunctions.put(Op.MOD, TextVisitor::mod);
-            comparisonFunctions.put(Op.DIV, TextVisitor::div);
-        }
+    public TextVisitor(GenContext context, OutputWriter writer) {
+        this.context = context;
+        this.writer = writer;
+        this.allocate = context.isEnabled(Optimization.REGALLOC);
+        this.saveClobbered = context.isEnabled(Optimization.SAVE_CLOBBERED);
+        this.registerArgs = context.isEnabled(Optimization.REGISTER_ARGS);
+        this.strengthReduce = context.isEnabled(Optimization.STRENGTH_REDUCE);
+        this.immediates = context.isEnabled(Optimization.IMMEDIATES);
+        this.branchConditions = context.isEnabled(Optimization.BRANCH_CONDITIONS);
+        this.blockCopy = context.isEnabled(Optimization.BLOCK_COPY);
+        this.frameLayout = context.isEnabled(Optimization.FRAME_LAYOUT);
+        this.tailCalls = context.isEnabled(Optimization.TAIL_CALLS);
+        this.registers = new Registers(allocate);
+        this.preDefinedVisitor = new PreDefinedVisitor(writer, registers, this);
+        this.funcLabel = new Labeller(context.getLabels(), "func");
     }
 
     // START OF HELPER FUNCTIONS
 
+    // nothing can point to a variable (there is no address-of), so the ones fitting in a word can be kept in a register
+    private boolean fitsRegister(VarDecl vd) {
+        return allocate && (vd.type == BaseType.INT || vd.type instanceof PointerType);
+    }
+
     private void allocateStackSpace(List<VarDecl> varDecls, boolean updateStackPointer) {
         writer.comment("Allocate space on stack for varDecls %s (updateSP=%s) (frameOffset=%d)", Arrays.toString(varDecls.toArray()), updateStackPointer, frameOffset);
         int totalSize = 0;
         for (VarDecl vd : varDecls) {
+            if (fitsRegister(vd)) {
+                registerVariables.put(vd, registers.get());
+                continue;
+            }
+
             int size = allignTo4Bytes(vd.type.sizeOf());
             frameOffset -= size;
             totalSize += size;
 
             vd.setGenStackOffset(frameOffset);
         }
+        deepestFrameOffset = Math.min(deepestFrameOffset, frameOffset);
 
         if (updateStackPointer) {
             if (totalSize == 0) {
@@ -64,25 +129,30 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
                 return;
             }
 
-            Register.sp.sub(totalSize);
+            writer.sub(Register.sp, Register.sp, totalSize);
         }
     }
 
-    private void freeStackSpace(List<VarDecl> varDecls) {
+    private void freeStackSpace(List<VarDecl> varDecls, boolean updateStackPointer) {
         writer.comment("Free space on stack from varDecls");
         int totalSize = 0;
         for (VarDecl vd : varDecls) {
+            if (registerVariables.containsKey(vd))
+                continue;
+
             int size = allignTo4Bytes(vd.type.sizeOf());
             frameOffset += size;
             totalSize += size;
         }
 
+        if (!updateStackPointer)
+            return;
         if (totalSize == 0) {
             writer.nop();
             return;
         }
 
-        Register.sp.add(totalSize);
+        writer.add(Register.sp, Register.sp, totalSize);
     }
 
     // save registers
@@ -90,7 +160,7 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
         writer.comment("save registers");
         try (OutputWriter scope = writer.scope()) {
             writer.comment("Adjust $sp for prologue");
-            Register.sp.sub(prologueSize);
+            writer.sub(Register.sp, Register.sp, prologueSize);
 
             int i = 0;
             for (Register r : Register.savedRegisters) {
@@ -109,8 +179,125 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
                 writer.lw(r, Register.sp, i);
                 i += 4;
             }
-            Register.sp.add(prologueSize);
+            writer.add(Register.sp, Register.sp, prologueSize);
+        }
+    }
+
+    // the registers to save which the instructions of the function write, and $fp which its prologue sets
+    // (the argument registers are not kept across calls when passing arguments in them, they are set before each)
+    private List<Register> clobbered(List<Instruction> function) {
+        List<Register> written = new ArrayList<>();
+        for (Register r : Register.savedRegisters) {
+            if (registerArgs && r.paramIndex() >= 0)
+                continue;
+            if (r.is(Register.fp)) {
+                written.add(r);
+                continue;
+            }
+            for (Instruction instruction : function) {
+                if (instruction.writes(r)) {
+                    written.add(r);
+                    break;
+                }
+            }
+        }
+        return written;
+    }
+
+    // the register the index-th parameter of fd is passed in, or null when passed on the stack (a slot is kept for it
+    // there all the same, the offsets of the parameters do not depend on the calling convention)
+    private Register parameterRegister(FunDecl fd, int index) {
+        if (!registerArgs || !isScalar(fd.params.get(index).type))
+            return null;
+
+        int scalars = 0;
+        for (int i = 0; i < index; i++) {
+            if (isScalar(fd.params.get(i).type))
+                scalars++;
+        }
+        return scalars < Register.paramRegs.length ? Register.paramRegs[scalars] : null;
+    }
+
+    // Whether the arguments of the call passed on the stack can be stored right where the callee finds them, below
+    // $sp, rather than moving $sp down over each one: no call made while evaluating them (or those after them) can
+    // then use that space for its own frame, nor return a struct from there
+    private boolean storesArgumentsAtOffsets(FunCallExpr fc) {
+        if (!frameLayout)
+            return false;
+        boolean onStack = false;
+        for (int i = 0; i < fc.params.size(); i++) {
+            onStack |= parameterRegister(fc.fd, i) == null;
+            if (onStack && makesCall(fc.params.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    // whether evaluating the expression calls a function with a frame of its own (the predefined ones do not have any)
+    private static boolean makesCall(Expr expr) {
+        if (expr instanceof FunCallExpr || expr instanceof InlinedCallExpr) {
+            // only leaf functions are inlined, the copy of their body calls nothing but the predefined functions
+            FunCallExpr fc = expr instanceof FunCallExpr ? (FunCallExpr) expr : ((InlinedCallExpr) expr).call;
+            if (expr instanceof FunCallExpr && !fc.fd.isPreDefined)
+                return true;
+            for (Expr param : fc.params) {
+                if (makesCall(param))
+                    return true;
+            }
+            return false;
+        }
+        if (expr instanceof BinOp)
+            return makesCall(((BinOp) expr).lhs) || makesCall(((BinOp) expr).rhs);
+        if (expr instanceof ArrayAccessExpr)
+            return makesCall(((ArrayAccessExpr) expr).name) || makesCall(((ArrayAccessExpr) expr).index);
+        if (expr instanceof FieldAccessExpr)
+            return makesCall(((FieldAccessExpr) expr).name);
+        if (expr instanceof ValueAtExpr)
+            return makesCall(((ValueAtExpr) expr).expression);
+        if (expr instanceof TypecastExpr)
+            return makesCall(((TypecastExpr) expr).expression);
+        return false;
+    }
+
+    // Whether fd returns a call of itself, which can then be made by reassigning its parameters and jumping back to the
+    // start of its body. Only when they are all scalars: a struct argument could be read from the parameter which
+    // another one is copied into.
+    private static boolean hasSelfTailCall(FunDecl fd) {
+        for (VarDecl vd : fd.params) {
+            if (!isScalar(vd.type))
+                return false;
+        }
+        return returnsCallOf(fd.block, fd);
+    }
+
+    // the return statements are only looked for in statements, those in the expressions are those of inlined calls
+    private static boolean returnsCallOf(Stmt stmt, FunDecl fd) {
+        if (stmt instanceof Return)
+            return ((Return) stmt).expression instanceof FunCallExpr && ((FunCallExpr) ((Return) stmt).expression).fd == fd;
+        if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) {
+                if (returnsCallOf(s, fd))
+                    return true;
+            }
+            return false;
         }
+        if (stmt instanceof If) {
+            If i = (If) stmt;
+            return returnsCallOf(i.ifStatement, fd) || (i.elseStatement != null && returnsCallOf(i.elseStatement, fd));
+        }
+        if (stmt instanceof While)
+            return returnsCallOf(((While) stmt).statement, fd);
+        return false;
+    }
+
+    private static boolean isScalar(Type type) {
+        return type == BaseType.INT || type == BaseType.CHAR || type instanceof PointerType;
+    }
+
+    // sets the size of the frame allocated (or pointed into) by the instruction at index
+    private static void resizeFrame(List<Instruction> function, int index, int size) {
+        Instruction instruction = function.get(index);
+        function.set(index, instruction.withImmediate(instruction.opcode, instruction.r2, size));
     }
 
     // Establish which expression to addressOf
@@ -133,9 +320,20 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
 
         writer.comment("%s = addressOf(%s)", pointer, aa);
         int size = aa.type.sizeOf();
-        try (Register index = aa.index.accept(this)) {
-            index.mul(size);
-            pointer.add(index);
+        Integer constant = strengthReduce ? constantOf(aa.index) : null;
+        if (constant != null) {
+            writer.add(pointer, pointer, constant * size);
+        } else if (strengthReduce && log2(size) >= 0) {
+            try (Register index = aa.index.accept(this)) {
+                if (size > 1)
+                    writer.sll(index, index, log2(size));
+                writer.add(pointer, pointer, index);
+            }
+        } else {
+            try (Register index = aa.index.accept(this)) {
+                writer.mul(index, index, size);
+                writer.add(pointer, pointer, index);
+            }
         }
 
         return pointer;
@@ -144,14 +342,15 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
     // get addressOf(VarExpr)
     private Register addressOf(VarExpr v) {
         VarDecl varDecl = v.vd;
+        assert !registerVariables.containsKey(varDecl);
 
-        Register value = Helper.registers.get();
+        Register value = registers.get();
         writer.comment("%s = addressOf(%s)", value, v);
 
         if (varDecl.isGlobalName()) {
             // Load address into "value"
             String label = varDecl.getGlobalName();
-            value.loadAddress(label);
+            writer.la(value, label);
 
             return value;
         }
@@ -172,8 +371,8 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
             if (((VarExpr) fa.name).vd.isGlobalName()) {
                 String label = ((VarExpr) fa.name).vd.getStructFieldLabel(fa.field);
 
-                Register address = Helper.registers.get();
-                address.loadAddress(label);
+                Register address = registers.get();
+                writer.la(address, label);
                 return address;
             }
         }
@@ -183,18 +382,14 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
         writer.comment("%s = addressOf(%s)", address, fa);
 
         // Offset the address by whichever amount
-        StructType structType = (StructType) fa.name.type;
-        int offset = 0;
-        for (VarDecl vd : structType.std.variables) {
-            if (vd.varName.equals(fa.field)) {
-                address.add(offset);
-                return address;
-            }
-
-            offset += allignTo4Bytes(vd.type.sizeOf());
+        StructTypeDecl std = ((StructType) fa.name.type).std;
+        int index = std.fieldIndex(fa.field);
+        if (index < 0) {
+            throw new RuntimeException("could not find field in: " + fa.toString());
         }
 
-        throw new RuntimeException("could not find field in: " + fa.toString());
+        writer.add(address, address, std.fieldOffset(index));
+        return address;
     }
 
     // get addressOf(ValueAtExpr)
@@ -202,6 +397,11 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
         assert va.expression.type instanceof PointerType;
         writer.comment(va);
         try (OutputWriter scope = writer.scope()) {
+            // A pointer kept in a register is the address itself
+            if (va.expression instanceof VarExpr && registerVariables.containsKey(((VarExpr) va.expression).vd)) {
+                return va.expression.accept(this);
+            }
+
             // Store address of the pointer in a register
             Register locationOfPointer = addressOf(va.expression);
 
@@ -215,16 +415,16 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
 
     // Get value of a certain type stored at this address
     public Register getValue(Register address, Type type) {
-        Register value = Helper.registers.get();
+        Register value = registers.get();
 
         writer.comment("%s = valueAt(%s, %s)", value, address, type);
 
         if (type == BaseType.CHAR) {
-            value.loadByte(address, 0);
+            writer.lb(value, address, 0);
         } else if (type == BaseType.INT || type instanceof PointerType) {
-            value.loadWord(address, 0);
+            writer.lw(value, address, 0);
         } else if (type instanceof ArrayType || type instanceof StructType) {
-            value.set(address);
+            writer.move(value, address);
         } else if (type == BaseType.VOID) {
             writer.nop();
         } else {
@@ -237,9 +437,12 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
     public void storeValue(Register lhsRegister, Type type, Register rhsRegister, int offset) {
         writer.comment("(%s + %d) = valueOf(%s, %s)", rhsRegister, offset, lhsRegister, type);
         if (type == BaseType.CHAR) {
-            lhsRegister.storeByteAt(rhsRegister, offset);
+            writer.sb(lhsRegister, rhsRegister, offset);
         } else if (type == BaseType.INT || type instanceof PointerType) {
-            lhsRegister.storeWordAt(rhsRegister, offset);
+            writer.sw(lhsRegister, rhsRegister, offset);
+        } else if (type instanceof ArrayType || blockCopy && type instanceof StructType) {
+            // lhsRegister holds the address of the value here too, arrays have no fields to copy one by one
+            copyBlock(lhsRegister, rhsRegister, offset, allignTo4Bytes(type.sizeOf()));
         } else if (type instanceof StructType) {
 
             // Note, lhsRegister is actually referring to the struct's address
@@ -257,48 +460,472 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
 
                     // Increment our read offset and struct address by the size we've just read
                     int size = allignTo4Bytes(vd.type.sizeOf());
-                    lhsRegister.add(size);
+                    writer.add(lhsRegister, lhsRegister, size);
                     offset += size;
                     totalSize += size;
                 }
 
                 // Restore sourceValue to original address
-                lhsRegister.sub(totalSize);
+                writer.sub(lhsRegister, lhsRegister, totalSize);
             }
         } else {
             throw new RuntimeException("storeValue hasn't been implemented for type: " + type.toString());
         }
     }
 
+    // Copies size bytes (a multiple of 4) from the address in source to offset(target), a word at a time: structs and
+    // arrays are word aligned, and so are their sizes and the offsets of the fields of structs (padding included).
+    // Large blocks are copied by a loop of a few words per iteration, followed by the words left over.
+    private void copyBlock(Register source, Register target, int offset, int size) {
+        int words = size / 4;
+        writer.comment("copy %d words from %s to %d(%s)", words, source, offset, target);
+        try (OutputWriter scope = writer.scope(); Register word = registers.get()) {
+            if (words <= unrolledCopyWords) {
+                copyWords(word, source, target, offset, words);
+                return;
+            }
+
+            int looped = words / copyLoopWords * copyLoopWords * 4;
+            try (Register from = registers.get(); Register to = registers.get(); Register end = registers.get()) {
+                String loop = copyLabel.enumLabel("loop");
+                writer.move(from, source);
+                writer.add(to, target, offset);
+                writer.add(end, source, looped);
+                writer.withLabel(loop).labelLine();
+                copyWords(word, from, to, 0, copyLoopWords);
+                writer.add(from, from, 4 * copyLoopWords);
+                writer.add(to, to, 4 * copyLoopWords);
+                writer.bne(from, end, loop);
+                copyWords(word, from, to, 0, words % copyLoopWords);
+            }
+        }
+    }
+
+    // lw/sw of the first words words at source to offset(target), through the register word
+    private void copyWords(Register word, Register source, Register target, int offset, int words) {
+        for (int i = 0; i < words; i++) {
+            writer.lw(word, source, 4 * i);
+            writer.sw(word, target, offset + 4 * i);
+        }
+    }
+
     private Register visitAddressableExpr(Expr expr) {
         try (Register address = addressOf(expr)) {
             return getValue(address, expr.type);
         }
     }
 
-    private static Register mul(Register x, Register y) {
-        Register result = Helper.registers.get();
-        Helper.writer.mul(result, x, y);
+    private Register mul(Register x, Register y) {
+        Register result = registers.get();
+        writer.mul(result, x, y);
         return result;
     }
 
-    private static Register mod(Register num, Register dividedBy) {
-        Register result = Helper.registers.get();
-        Helper.writer.div(num, dividedBy);
-        Helper.writer.mfhi(result);
+    private Register mod(Register num, Register dividedBy) {
+        Register result = registers.get();
+        writer.div(num, dividedBy);
+        writer.mfhi(result);
         return result;
     }
 
-    private static Register div(Register num, Register dividedBy) {
-        Register result = Helper.registers.get();
-        Helper.writer.div(num, dividedBy);
-        Helper.writer.mflo(result);
+    private Register div(Register num, Register dividedBy) {
+        Register result = registers.get();
+        writer.div(num, dividedBy);
+        writer.mflo(result);
         return result;
     }
 
+    // STRENGTH REDUCTION
+
+    // the value of an int or char literal, null otherwise
+    private static Integer constantOf(Expr expr) {
+        if (expr instanceof IntLiteral)
+            return ((IntLiteral) expr).value;
+        if (expr instanceof ChrLiteral)
+            return (int) ((ChrLiteral) expr).value;
+        return null;
+    }
+
+    // k when value is 2^k, -1 when it is not a power of two
+    private static int log2(int value) {
+        return value > 0 && (value & (value - 1)) == 0 ? Integer.numberOfTrailingZeros(value) : -1;
+    }
+
+    // whether x op constant can be done with shifts: multiplications by 0, by +-2^k and by 2^k +- 1,
+    // divisions and modulos by +-2^k (k > 0)
+    private static boolean isReducible(Op op, int constant) {
+        switch (op) {
+            case MUL:
+                return constant == 0 || log2(constant) >= 0 || log2(-constant) >= 0
+                        || log2(constant - 1) > 0 || log2(constant + 1) > 0;
+            case DIV:
+            case MOD:
+                return log2(Math.abs(constant)) > 0;
+            default:
+                return false;
+        }
+    }
+
+    // a multiplication, division or modulo by a constant with shifts, or null when it cannot be
+    private Register reduceStrength(BinOp binOp) {
+        Expr operand = binOp.lhs;
+        Integer constant = constantOf(binOp.rhs);
+        if (binOp.op == Op.MUL && constant == null) {
+            operand = binOp.rhs;
+            constant = constantOf(binOp.lhs);
+        }
+        if (constant == null || !isReducible(binOp.op, constant))
+            return null;
+
+        try (Register x = operand.accept(this)) {
+            switch (binOp.op) {
+                case MUL: return multiply(x, constant);
+                case DIV: return divide(x, constant);
+                default: return modulo(x, Math.abs(constant));
+            }
+        }
+    }
+
+    // value = x << k, the multiplications wrap around as mul does
+    private void shift(Register value, Register x, int k) {
+        if (k == 0)
+            writer.move(value, x);
+        else
+            writer.sll(value, x, k);
+    }
+
+    private Register multiply(Register x, int constant) {
+        Register result = registers.get();
+        if (constant == 0) {
+            writer.li(result, 0);
+        } else if (log2(constant) >= 0) {
+            shift(result, x, log2(constant));
+        } else if (log2(-constant) >= 0) {
+            shift(result, x, log2(-constant));
+            writer.subu(result, Register.zero, result);
+        } else if (log2(constant - 1) > 0) {
+            writer.sll(result, x, log2(constant - 1));
+            writer.addu(result, result, x);
+        } else {
+            writer.sll(result, x, log2(constant + 1));
+            writer.subu(result, result, x);
+        }
+        return result;
+    }
+
+    // value = x < 0 ? 2^k - 1 : 0, added to x so that shifting it right rounds towards zero as div does
+    private void roundingBias(Register value, Register x, int k) {
+        if (k == 1) {
+            writer.srl(value, x, 31);
+        } else {
+            writer.sra(value, x, 31);
+            writer.srl(value, value, 32 - k);
+        }
+    }
+
+    private Register divide(Register x, int constant) {
+        int k = log2(Math.abs(constant));
+        Register result = registers.get();
+        roundingBias(result, x, k);
+        writer.addu(result, x, result);
+        writer.sra(result, result, k);
+        if (constant < 0)
+            writer.subu(result, Register.zero, result);
+        return result;
+    }
+
+    // x % 2^k = ((x + bias) & (2^k - 1)) - bias, of the sign of x as with div
+    private Register modulo(Register x, int constant) {
+        int k = log2(constant);
+        Register result = registers.get();
+        try (Register bias = registers.get()) {
+            roundingBias(bias, x, k);
+            writer.addu(result, x, bias);
+            lowBits(result, result, k);
+            writer.subu(result, result, bias);
+        }
+        return result;
+    }
+
+    // value = x & (2^k - 1)
+    private void lowBits(Register value, Register x, int k) {
+        if (k <= 16) {
+            writer.andi(value, x, (1 << k) - 1);
+        } else {
+            writer.sll(value, x, 32 - k);
+            writer.srl(value, value, 32 - k);
+        }
+    }
+
+    // k when expr is x % +-2^k (k > 0), which is 0 exactly when the low k bits of x are, whatever its sign, -1 otherwise
+    private static int moduloBits(Expr expr) {
+        if (!(expr instanceof BinOp) || ((BinOp) expr).op != Op.MOD)
+            return -1;
+        Integer constant = constantOf(((BinOp) expr).rhs);
+        int k = constant == null ? -1 : log2(Math.abs(constant));
+        return k > 0 ? k : -1;
+    }
+
+    // x % 2^k == 0 (or != 0) as (x & (2^k - 1)) == 0, or null when it is not such a test
+    private Register testLowBits(BinOp binOp) {
+        Expr tested = constantOf(binOp.lhs) != null ? binOp.rhs : binOp.lhs;
+        Expr zero = tested == binOp.lhs ? binOp.rhs : binOp.lhs;
+        if (moduloBits(tested) < 0 || !Integer.valueOf(0).equals(constantOf(zero)))
+            return null;
+
+        try (Register x = ((BinOp) tested).lhs.accept(this)) {
+            Register result = registers.get();
+            lowBits(result, x, moduloBits(tested));
+            if (immediates)
+                isZero(result, result, binOp.op == Op.EQ);
+            else
+                writer.instruction(comparators.get(binOp.op), result, result, Register.zero);
+            return result;
+        }
+    }
+
+    // IMMEDIATE OPERANDS
+
+    private static boolean fits16Bits(int value) {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+
+    // c op x is x mirrored(op) c
+    private static Op mirrored(Op op) {
+        switch (op) {
+            case LT: return Op.GT;
+            case GT: return Op.LT;
+            case LE: return Op.GE;
+            case GE: return Op.LE;
+            default: return op;
+        }
+    }
+
+    // whether x op constant is shorter with an immediate: additions and subtractions (addi), less than (slti), less
+    // or equal (slti of constant + 1), greater or equal (not slti) and equality (xori or addiu then sltiu/sltu),
+    // greater than is as short with li and sgt
+    private static boolean isImmediate(Op op, int constant) {
+        switch (op) {
+            case ADD:
+            case LT:
+            case GE:
+                return fits16Bits(constant);
+            case SUB:
+                return constant != Integer.MIN_VALUE && fits16Bits(-constant);
+            case LE:
+                return constant != Integer.MAX_VALUE && fits16Bits(constant + 1);
+            case EQ:
+            case NE:
+                return constant >= -Short.MAX_VALUE && constant <= 0xFFFF;
+            default:
+                return false;
+        }
+    }
+
+    // an addition, subtraction or comparison with a constant operand given as an immediate, or null when it cannot be
+    private Register withImmediate(BinOp binOp) {
+        Op op = binOp.op;
+        Expr operand = binOp.lhs;
+        Integer constant = constantOf(binOp.rhs);
+        if (constant == null && op != Op.SUB) {
+            op = mirrored(op);
+            operand = binOp.rhs;
+            constant = constantOf(binOp.lhs);
+        }
+        if (constant == null || !isImmediate(op, constant))
+            return null;
+
+        try (Register x = operand.accept(this)) {
+            Register result = registers.get();
+            switch (op) {
+                case ADD:
+                    writer.add(result, x, constant);
+                    break;
+                case SUB:
+                    writer.add(result, x, -constant);
+                    break;
+                case LT:
+                    writer.slti(result, x, constant);
+                    break;
+                case LE:
+                    writer.slti(result, x, constant + 1);
+                    break;
+                case GE:
+                    writer.slti(result, x, constant);
+                    writer.xori(result, result, 1);
+                    break;
+                default:
+                    // x == c is (x ^ c) == 0, or (x + -c) == 0 for a negative c, which cannot overflow with addiu
+                    Register difference = x;
+                    if (constant > 0) {
+                        writer.xori(result, x, constant);
+                        difference = result;
+                    } else if (constant < 0) {
+                        writer.addiu(result, x, -constant);
+                        difference = result;
+                    }
+                    isZero(result, difference, op == Op.EQ);
+                    break;
+            }
+            return result;
+        }
+    }
+
+    // value = x == 0 (sltiu x, 1), or x != 0 (0 < x, unsigned)
+    private void isZero(Register value, Register x, boolean equal) {
+        if (equal)
+            writer.sltiu(value, x, 1);
+        else
+            writer.sltu(value, Register.zero, x);
+    }
+
+    // CONDITIONS
+
+    // the comparison true exactly when op is false: a < b is false when a >= b
+    private static Op negated(Op op) {
+        switch (op) {
+            case EQ: return Op.NE;
+            case NE: return Op.EQ;
+            case LT: return Op.GE;
+            case GE: return Op.LT;
+            case GT: return Op.LE;
+            case LE: return Op.GT;
+            default: throw new IllegalArgumentException(op.toString());
+        }
+    }
+
+    // Branches to target when the condition is jumpIf, falls through otherwise, without making the condition 0 or 1
+    // first: comparisons become branches, && and || skip their rhs by jumping to where their lhs decides.
+    // positive: whether a value is only true when greater than 0, as the rhs of && is (see and)
+    private void branch(Expr condition, boolean jumpIf, String target, boolean positive) {
+        Integer constant = constantOf(condition);
+        if (constant != null) {
+            if ((positive ? constant > 0 : constant != 0) == jumpIf)
+                writer.b(target);
+            return;
+        }
+
+        if (condition instanceof BinOp) {
+            BinOp binOp = (BinOp) condition;
+            switch (binOp.op) {
+                case AND:
+                case OR:
+                    // the value of the lhs deciding the whole: false for &&, true for ||
+                    boolean decisive = binOp.op == Op.OR;
+                    if (jumpIf == decisive) {
+                        branch(binOp.lhs, jumpIf, target, false);
+                        branch(binOp.rhs, jumpIf, target, binOp.op == Op.AND);
+                    } else {
+                        String decided = binopLabel.enumLabel(binOp.op == Op.AND ? "and_false" : "or_true");
+                        branch(binOp.lhs, decisive, decided, false);
+                        branch(binOp.rhs, jumpIf, target, binOp.op == Op.AND);
+                        writer.withLabel(decided).nop();
+                    }
+                    return;
+                case EQ:
+                case NE:
+                case LT:
+                case GT:
+                case LE:
+                case GE:
+                    compareAndBranch(binOp, jumpIf ? binOp.op : negated(binOp.op), target);
+                    return;
+                default:
+                    break;
+            }
+        }
+
+        try (Register value = condition.accept(this)) {
+            if (positive) {
+                if (jumpIf)
+                    writer.bgtz(value, target);
+                else
+                    writer.blez(value, target);
+            } else {
+                if (jumpIf)
+                    writer.bnez(value, target);
+                else
+                    writer.beqz(value, target);
+            }
+        }
+    }
+
+    // branches to target when lhs op rhs: against 0 with the branches comparing to zero, against a constant with
+    // slti when it fits, with beq/bne or slt otherwise
+    private void compareAndBranch(BinOp comparison, Op op, String target) {
+        Expr lhs = comparison.lhs;
+        Expr rhs = comparison.rhs;
+        if (constantOf(lhs) != null && constantOf(rhs) == null) {
+            lhs = comparison.rhs;
+            rhs = comparison.lhs;
+            op = mirrored(op);
+        }
+        Integer constant = constantOf(rhs);
+
+        if (strengthReduce && (op == Op.EQ || op == Op.NE) && constant != null && constant == 0 && moduloBits(lhs) > 0) {
+            try (Register x = ((BinOp) lhs).lhs.accept(this); Register bits = registers.get()) {
+                lowBits(bits, x, moduloBits(lhs));
+                if (op == Op.EQ)
+                    writer.beqz(bits, target);
+                else
+                    writer.bnez(bits, target);
+            }
+            return;
+        }
+
+        try (Register x = lhs.accept(this)) {
+            if (constant != null && constant == 0) {
+                switch (op) {
+                    case EQ: writer.beqz(x, target); break;
+                    case NE: writer.bnez(x, target); break;
+                    case LT: writer.bltz(x, target); break;
+                    case GE: writer.bgez(x, target); break;
+                    case GT: writer.bgtz(x, target); break;
+                    default: writer.blez(x, target); break;
+                }
+                return;
+            }
+
+            // x < c and x >= c test slti x, c, x > c and x <= c test slti x, c + 1
+            boolean lessThan = op == Op.LT || op == Op.GE;
+            boolean lessOrEqual = op == Op.GT || op == Op.LE;
+            if (immediates && constant != null
+                    && (lessThan && isImmediate(Op.LT, constant) || lessOrEqual && isImmediate(Op.LE, constant))) {
+                try (Register less = registers.get()) {
+                    writer.slti(less, x, lessThan ? constant : constant + 1);
+                    if (op == Op.LT || op == Op.LE)
+                        writer.bnez(less, target);
+                    else
+                        writer.beqz(less, target);
+                }
+                return;
+            }
+
+            try (Register y = rhs.accept(this)) {
+                if (op == Op.EQ) {
+                    writer.beq(x, y, target);
+                } else if (op == Op.NE) {
+                    writer.bne(x, y, target);
+                } else {
+                    try (Register less = registers.get()) {
+                        // x < y or x >= y test x < y, x > y and x <= y test y < x
+                        if (lessThan)
+                            writer.instruction(Opcode.SLT, less, x, y);
+                        else
+                            writer.instruction(Opcode.SLT, less, y, x);
+                        if (op == Op.LT || op == Op.GT)
+                            writer.bnez(less, target);
+                        else
+                            writer.beqz(less, target);
+                    }
+                }
+            }
+        }
+    }
+
     private Register and(Register lhs, Expr rhsExpr) {
         // Generate a result register
-        Register result = Helper.registers.get();
+        Register result = registers.get();
 
         // Generate labels with "false", "true", "end" sufixes ahead of time
         String falseSufix = binopLabel.enumLabel("and_false");
@@ -313,12 +940,12 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
         // - FINISH : return the result
 
         // Jump to FALSE if lhs is zero
-        Helper.writer.beqz(lhs, falseSufix);
+        writer.beqz(lhs, falseSufix);
 
         // Jump to TRUE if rhs success
         try (Register rhs = rhsExpr.accept(this)) {
             // If rhs is greater than zero, we want to skip to the true label
-            Helper.writer.bgtz(rhs, trueSufix);
+            writer.bgtz(rhs, trueSufix);
         }
 
         // FALSE: Set result to 0, jump to finish
@@ -336,7 +963,7 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
 
     private Register or(Register lhs, Expr rhsExpr) {
         // Generate a result register
-        Register result = Helper.registers.get();
+        Register result = registers.get();
 
         // Generate labels with "false", "true", "end" sufixes ahead of time
         String falseSufix = binopLabel.enumLabel("or_false");
@@ -372,13 +999,31 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
         return result;
     }
 
-    private Register compare(Register lhs, Register rhs, String operator) {
-        Register result = Helper.registers.get();
-        writer.printf("%s %s, %s, %s", operator, result, lhs, rhs);
+    private Register compare(Register lhs, Register rhs, Opcode operator) {
+        Register result = registers.get();
+        writer.instruction(operator, result, lhs, rhs);
         return result;
 
     }
 
+    // Assign every function its label and the stack offsets of its parameters before any body is generated,
+    // calls only read those, wherever (and whenever) the callee gets generated.
+    private void declareFunctions(List<FunDecl> funDecls) {
+        for (FunDecl fd : funDecls) {
+            if (fd.isPreDefined) {
+                continue;
+            }
+
+            fd.globalName = funcLabel.addLabel(fd.name + "_start");
+
+            int offset = 0;
+            for (VarDecl vd : fd.params) {
+                offset -= allignTo4Bytes(vd.type.sizeOf());
+                vd.setGenStackOffset(offset);
+            }
+        }
+    }
+
     // END OF HELPER FUNCTIONS
 
     // START OF VISIT FUNCTIONS
@@ -390,11 +1035,29 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
         try (OutputWriter scope = writer.scope()) {
             writer.withLabel("main").newSection("globl %s", "main");
             writer.jal("func_main_start");
-            Register.paramRegs[0].set(Register.v0);
-            Register.v0.loadImmediate(17);
+            writer.move(Register.paramRegs[0], Register.v0);
+            writer.li(Register.v0, 17);
             writer.syscall();
 
-            super.visitProgram(p);
+            // each function is generated by a visitor of its own (with its own registers and labels), so its code
+            // does not depend on the functions generated before it
+            declareFunctions(p.funDecls);
+            ForkJoinPool pool = context.getPool();
+            if (pool == null) {
+                for (FunDecl fd : p.funDecls)
+                    fd.accept(new TextVisitor(context, writer));
+            } else {
+                List<ForkJoinTask<OutputWriter>> functions = new ArrayList<>();
+                for (FunDecl fd : p.funDecls) {
+                    OutputWriter functionWriter = writer.buffered();
+                    functions.add(pool.submit(() -> {
+                        fd.accept(new TextVisitor(context, functionWriter));
+                        return functionWriter;
+                    }));
+                }
+                for (ForkJoinTask<OutputWriter> function : functions)
+                    writer.append(function.join());
+            }
         }
 
         assert writer.getIndentLevel() == 0;
@@ -404,12 +1067,13 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
     @Override
     public Register visitBlock(Block b) {
         int oldOffset = frameOffset;
-        allocateStackSpace(b.variables, true);
+        // with frameLayout the frame is as deep as the deepest blocks, those which are not nested share their slots
+        allocateStackSpace(b.variables, !frameLayout);
 
         for (Stmt stmt : b.statements)
             stmt.accept(this);
 
-        freeStackSpace(b.variables);
+        freeStackSpace(b.variables, !frameLayout);
         assert frameOffset == oldOffset;
         return null;
     }
@@ -421,14 +1085,32 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
             return null;
         }
 
-        fd.globalName = funcLabel.addLabel(fd.name + "_start");
         writer.withLabel(fd.globalName).comment("%s", fd);
 
-        String epilogueLabel = funcLabel.addLabel(fd.name + "_epilogue");
+        epilogueLabel = funcLabel.addLabel(fd.name + "_epilogue");
+        function = fd;
+        bodyLabel = tailCalls && hasSelfTailCall(fd) ? funcLabel.addLabel(fd.name + "_body") : null;
+        binopLabel = new Labeller(context.getLabels(), "binop_" + fd.name);
+        ifLabel = new Labeller(context.getLabels(), "if_" + fd.name);
+        whileLabel = new Labeller(context.getLabels(), "while_" + fd.name);
+        copyLabel = new Labeller(context.getLabels(), "copy_" + fd.name);
+        inlineLabel = new Labeller(context.getLabels(), "inline_" + fd.name);
+
+        List<Instruction> instructions = writer.getInstructions();
+        int start = instructions.size() - 1;
+        int frameIndex = -1;        // where the frame is allocated, it is made larger for what LinearScan spills
+        int prologueIndex = -1;     // with saveClobbered, where the frame is set up once the registers to save are known
+        int restoreFromEnd = -1;    // and where they are restored, counted from the end as lines are added in between
+        OutputWriter prologue = null;
+        OutputWriter restores = null;
 
         frameOffset = 0; // reset frame offset to 0 because we only care about it per function
-        // Allocate space for arguments on stack
-        allocateStackSpace(fd.params, false);
+        // Space for arguments on stack, their offsets have been assigned by declareFunctions
+        writer.comment("Allocate space on stack for varDecls %s (updateSP=%s) (frameOffset=%d)", Arrays.toString(fd.params.toArray()), false, frameOffset);
+        for (VarDecl vd : fd.params) {
+            frameOffset -= allignTo4Bytes(vd.type.sizeOf());
+        }
+        deepestFrameOffset = frameOffset;
 
         try (OutputWriter scope = writer.scope()) {
             /*
@@ -440,25 +1122,53 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
 
             writer.comment("prologue");
             try (OutputWriter innerScope = writer.scope()) {
-                // Save our caller's registers
-                saveRegisters();
-
-                // Our stack pointer is just to tell us where to allocate space next.
-                // We already have arguments allocated.
-                // Set frame pointer to the stack pointer so we know where the callee can look for our passed data
-                writer.comment("reset frame pointer");
-                Register.fp.set(Register.sp);
-
-                // Jump over our parameters
-                writer.comment("Skip over parameters: %s", Arrays.toString(fd.params.toArray()));
-                for (VarDecl vd : fd.params) {
-                    paramsSize += allignTo4Bytes(vd.type.sizeOf());
+                if (saveClobbered) {
+                    prologue = writer.buffered();
+                    prologueIndex = instructions.size();
+                } else {
+                    // Save our caller's registers
+                    saveRegisters();
+
+                    // Our stack pointer is just to tell us where to allocate space next.
+                    // We already have arguments allocated.
+                    // Set frame pointer to the stack pointer so we know where the callee can look for our passed data
+                    writer.comment("reset frame pointer");
+                    writer.move(Register.fp, Register.sp);
+
+                    // Jump over our parameters
+                    writer.comment("Skip over parameters: %s", Arrays.toString(fd.params.toArray()));
+                    for (VarDecl vd : fd.params) {
+                        paramsSize += allignTo4Bytes(vd.type.sizeOf());
+                    }
+                    writer.sub(Register.sp, Register.sp, paramsSize);
+                    frameIndex = instructions.size() - 1;
+
+                    // Set $ra to epilogue
+                    writer.comment("Set $ra to epilogue");
+                    writer.la(Register.ra, epilogueLabel);
                 }
-                Register.sp.sub(paramsSize);
 
-                // Set $ra to epilogue
-                writer.comment("Set $ra to epilogue");
-                Register.ra.loadAddress(epilogueLabel);
+                // Move the parameters to where they are kept: a register, or their slot on the stack
+                for (int i = 0; i < fd.params.size(); i++) {
+                    VarDecl vd = fd.params.get(i);
+                    Register passedIn = parameterRegister(fd, i);
+                    if (fitsRegister(vd)) {
+                        Register register = registers.get();
+                        registerVariables.put(vd, register);
+                        if (passedIn != null)
+                            writer.move(register, passedIn);
+                        else
+                            writer.lw(register, Register.fp, vd.getGenStackOffset());
+                    } else if (passedIn != null) {
+                        storeValue(passedIn, vd.type, Register.fp, vd.getGenStackOffset());
+                    }
+                }
+            }
+
+            // self tail calls jump back here, with the parameters reassigned
+            if (bodyLabel != null) {
+                bodyFrameOffset = frameOffset;
+                writer.withLabel(bodyLabel).labelLine();
             }
 
             // function contents visitor
@@ -468,20 +1178,71 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
                 fd.block.accept(this);
 
                 writer.comment("Store default return value at $v0");
-                Register.v0.loadImmediate(0);
+                writer.li(Register.v0, 0);
             }
 
             writer.withLabel(epilogueLabel).comment("epilogue");
             try (OutputWriter innerScope = writer.scope()) {
                 // Set stack pointer to our function's frame pointer
-                Register.sp.set(Register.fp);
+                writer.move(Register.sp, Register.fp);
 
                 // Restore registers to caller's state
-                restoreRegisters();
+                if (saveClobbered) {
+                    restores = writer.buffered();
+                    restoreFromEnd = instructions.size();
+                } else {
+                    restoreRegisters();
+                }
 
                 // Jump to $ra
-                Register.ra.jump();
+                writer.jr(Register.ra);
+            }
+        }
+        if (saveClobbered)
+            restoreFromEnd = instructions.size() - restoreFromEnd;
+
+        List<Instruction> function = instructions.subList(start, instructions.size());
+        int spills = 0;
+        if (allocate)
+            spills = new LinearScan(function, deepestFrameOffset).allocate();
+        int frameSize = -deepestFrameOffset + 4 * spills;
+        if (!saveClobbered && (frameLayout || spills > 0))
+            resizeFrame(instructions, frameIndex, frameSize);
+
+        if (context.isEnabled(Optimization.PEEPHOLE)) {
+            List<Instruction> optimized = new Peephole(function, saveClobbered).optimize();
+            function.clear();
+            function.addAll(optimized);
+        }
+
+        if (saveClobbered) {
+            // What the function writes is known now. The caller has put our parameters right below its $sp, where
+            // the frame pointer is set, and the whole frame is allocated at once: parameters, locals, spill slots
+            // and the saved registers at the bottom
+            List<Register> clobbered = clobbered(function);
+            frameSize += 4 * clobbered.size();
+
+            prologue.comment("Allocate the frame");
+            if (immediates)
+                prologue.add(Register.sp, Register.sp, -frameSize);
+            else
+                prologue.sub(Register.sp, Register.sp, frameSize);
+            prologue.comment("save registers");
+            try (OutputWriter saveScope = prologue.scope()) {
+                for (int i = 0; i < clobbered.size(); i++)
+                    prologue.sw(clobbered.get(i), Register.sp, 4 * i);
+            }
+            prologue.comment("set frame pointer");
+            prologue.add(Register.fp, Register.sp, frameSize);
+
+            restores.comment("restore registers");
+            try (OutputWriter restoreScope = restores.scope()) {
+                for (int i = 0; i < clobbered.size(); i++)
+                    restores.lw(clobbered.get(i), Register.sp, 4 * i - frameSize);
             }
+
+            writer.insert(instructions.size() - restoreFromEnd, restores);
+            writer.insert(prologueIndex, prologue);
         }
         return null; // no register returned for function declarations
     }
@@ -489,13 +1250,22 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
     @Override
     public Register visitVarExpr(VarExpr v) {
         assert v.type == v.vd.type;
+
+        // a copy, the register returned may be modified by the caller
+        Register variable = registerVariables.get(v.vd);
+        if (variable != null) {
+            Register value = registers.get();
+            writer.move(value, variable);
+            return value;
+        }
+
         return visitAddressableExpr(v);
     }
 
     @Override
     public Register visitFunCallExpr(FunCallExpr fc) {
         if (fc.fd.isPreDefined) {
-            return fc.accept(Helper.preDefinedVisitor);
+            return fc.accept(preDefinedVisitor);
         }
 
         /*
@@ -509,21 +1279,31 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
         -
          */
 
-        Register result = Helper.registers.get();
+        Register result = registers.get();
 
         writer.comment("precall");
         try (OutputWriter scope = writer.scope()) {
-            // Store current return address
-            writer.comment("Store current return address on stack");
-            Register.sp.sub(4);
-            Register.ra.storeWordAt(Register.sp, 0);
+            // Store current return address, a function saving what it clobbers has it saved already
+            if (!saveClobbered) {
+                writer.comment("Store current return address on stack");
+                writer.sub(Register.sp, Register.sp, 4);
+                writer.sw(Register.ra, Register.sp, 0);
+                callSetupSize += 4;
+            }
 
-            // Skip the prologue size
-            writer.comment("Skip the prologue size (we will be writing into our callee stack frame)");
-            Register.sp.sub(prologueSize);
+            // Skip the prologue size, a callee saving only what it clobbers does so below its parameters
+            int skipped = saveClobbered ? 0 : prologueSize;
+            boolean fixedOffsets = storesArgumentsAtOffsets(fc);
+            if (!saveClobbered && !fixedOffsets) {
+                writer.comment("Skip the prologue size (we will be writing into our callee stack frame)");
+                writer.sub(Register.sp, Register.sp, prologueSize);
+                callSetupSize += prologueSize;
+            }
 
-            // Iterate through args
+            // Iterate through args, those passed in registers are only moved there once they are all evaluated
+            // (evaluating one may make a call of its own)
             int totalArgSize = 0;
+            Register[] registerArguments = new Register[Register.paramRegs.length];
             for (int i = 0; i < fc.fd.params.size(); i++) {
                 VarDecl vd = fc.fd.params.get(i);
                 Expr expr = fc.params.get(i);
@@ -532,19 +1312,42 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
                 int argSize = allignTo4Bytes(type.sizeOf());
                 totalArgSize += argSize;
 
-                Register.sp.sub(argSize);
+                if (!fixedOffsets) {
+                    writer.sub(Register.sp, Register.sp, argSize);
+                    callSetupSize += argSize;
+                }
+
+                Register passedIn = parameterRegister(fc.fd, i);
+                if (passedIn != null) {
+                    writer.comment("Evaluating arg %d of value (%s) for %s", i, expr, passedIn);
+                    try (OutputWriter argScope = writer.scope()) {
+                        registerArguments[passedIn.paramIndex()] = expr.accept(this);
+                    }
+                    continue;
+                }
 
                 int offset = vd.getGenStackOffset();
                 writer.comment("Storing arg %d of value (%s) at %d($sp)", i, expr, offset);
                 try (OutputWriter argScope = writer.scope(); Register sourceValue = expr.accept(this)) {
                     Register targetAddress = Register.sp;
-                    storeValue(sourceValue, type, targetAddress, 0);
+                    storeValue(sourceValue, type, targetAddress, fixedOffsets ? offset - skipped : 0);
                 }
             }
 
             // Roll back the sp by PrologueSize + argSize
-            writer.comment("Roll back the sp by PrologueSize + argSize");
-            Register.sp.add(prologueSize + totalArgSize);
+            if (!fixedOffsets) {
+                writer.comment("Roll back the sp by PrologueSize + argSize");
+                writer.add(Register.sp, Register.sp, skipped + totalArgSize);
+                callSetupSize -= skipped + totalArgSize;
+            }
+
+            for (int i = 0; i < registerArguments.length; i++) {
+                if (registerArguments[i] != null) {
+                    try (Register value = registerArguments[i]) {
+                        writer.move(Register.paramRegs[i], value);
+                    }
+                }
+            }
         }
 
         writer.comment("perform jump to declaration");
@@ -552,36 +1355,92 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
 
         writer.comment("postreturn");
         try (OutputWriter scope = writer.scope()) {
-            writer.comment("Restore return address");
-            Register.ra.loadWord(Register.sp, 0);
-            Register.sp.add(4);
+            if (!saveClobbered) {
+                writer.comment("Restore return address");
+                writer.lw(Register.ra, Register.sp, 0);
+                writer.add(Register.sp, Register.sp, 4);
+                callSetupSize -= 4;
+            }
 
             writer.comment("Set return value");
-            result.set(Register.v0);
+            writer.move(result, Register.v0);
             return result;
         }
     }
 
+    @Override
+    public Register visitInlinedCallExpr(InlinedCallExpr ic) {
+        Register result = registers.get();
+        String outerEnd = inlinedEnd;
+        Register outerResult = inlinedResult;
+        int outerFrameOffset = inlinedFrameOffset;
+        int outerCallSetupSize = callSetupSize;
+
+        writer.comment("inlined %s", ic.call);
+        try (OutputWriter scope = writer.scope()) {
+            // in an argument of a call, its parameters and locals go below what the call has pushed so far, unless
+            // the frame holds them
+            if (!frameLayout) {
+                frameOffset -= callSetupSize;
+                callSetupSize = 0;
+            }
+            // the parameters are locals of the caller, given the arguments in order
+            allocateStackSpace(ic.params, !frameLayout);
+            for (int i = 0; i < ic.params.size(); i++) {
+                VarDecl vd = ic.params.get(i);
+                Expr expr = ic.call.params.get(i);
+                writer.comment("Binding arg %d of value (%s) to %s", i, expr, vd.varName);
+                try (Register value = expr.accept(this)) {
+                    Register variable = registerVariables.get(vd);
+                    if (variable != null)
+                        writer.move(variable, value);
+                    else
+                        storeValue(value, vd.type, Register.fp, vd.getGenStackOffset());
+                }
+            }
+
+            String end = inlineLabel.enumLabel(ic.call.name);
+            inlinedEnd = end;
+            inlinedResult = result;
+            inlinedFrameOffset = frameOffset;
+            ic.block.accept(this);
+
+            // the value of a function ending without returning one, as set before its epilogue
+            writer.li(result, 0);
+            writer.withLabel(end).nop();
+
+            inlinedEnd = outerEnd;
+            inlinedResult = outerResult;
+            inlinedFrameOffset = outerFrameOffset;
+            freeStackSpace(ic.params, !frameLayout);
+            if (!frameLayout) {
+                frameOffset += outerCallSetupSize;
+                callSetupSize = outerCallSetupSize;
+            }
+        }
+        return result;
+    }
+
     @Override
     public Register visitIntLiteral(IntLiteral il) {
-        Register register = Helper.registers.get();
-        register.loadImmediate(il.value);
+        Register register = registers.get();
+        writer.li(register, il.value);
         return register;
     }
 
 
     @Override
     public Register visitChrLiteral(ChrLiteral cl) {
-        Register register = Helper.registers.get();
+        Register register = registers.get();
         writer.comment("%s = %s", register, cl.toString());
-        register.loadImmediate(cl.value);
+        writer.li(register, cl.value);
         return register;
     }
 
     @Override
     public Register visitStrLiteral(StrLiteral sl) {
-        Register register = Helper.registers.get();
-        register.loadAddress(sl.globalName);
+        Register register = registers.get();
+        writer.la(register, sl.globalName);
         return register;
     }
 
@@ -599,9 +1458,27 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
             try (Register lhs = binOp.lhs.accept(this); OutputWriter scope = writer.scope()) {
                 return or(lhs, binOp.rhs);
             }
-        } else if (comparisonFunctions.containsKey(binOp.op)) {
+        }
+
+        if (strengthReduce && comparisonFunctions.containsKey(binOp.op)) {
+            Register reduced = reduceStrength(binOp);
+            if (reduced != null)
+                return reduced;
+        } else if (strengthReduce && (binOp.op == Op.EQ || binOp.op == Op.NE)) {
+            Register tested = testLowBits(binOp);
+            if (tested != null)
+                return tested;
+        }
+
+        if (immediates && comparators.containsKey(binOp.op)) {
+            Register selected = withImmediate(binOp);
+            if (selected != null)
+                return selected;
+        }
+
+        if (comparisonFunctions.containsKey(binOp.op)) {
             try (Register lhs = binOp.lhs.accept(this); Register rhs = binOp.rhs.accept(this)) {
-                return comparisonFunctions.get(binOp.op).apply(lhs, rhs);
+                return comparisonFunctions.get(binOp.op).apply(this, lhs, rhs);
             }
         } else if (comparators.containsKey(binOp.op)) {
             try (Register lhs = binOp.lhs.accept(this); Register rhs = binOp.rhs.accept(this)) {
@@ -634,8 +1511,8 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
         writer.comment(so);
 
         try (OutputWriter scope = writer.scope()) {
-            Register val = Helper.registers.get();
-            val.loadImmediate(so.sizeOfType.sizeOf());
+            Register val = registers.get();
+            writer.li(val, so.sizeOfType.sizeOf());
             return val;
         }
     }
@@ -666,12 +1543,22 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
         String elseLabel = (i.elseStatement == null) ? endLabel : ifLabel.enumLabel("else");
 
         writer.comment("if (%s)", i.expression);
-        try (OutputWriter scope = writer.scope(); Register shouldSkip = i.expression.accept(this)) {
-            writer.beqz(shouldSkip, elseLabel);
+        if (branchConditions) {
+            try (OutputWriter scope = writer.scope()) {
+                branch(i.expression, false, elseLabel, false);
+
+                i.ifStatement.accept(this);
+
+                writer.b(endLabel);
+            }
+        } else {
+            try (OutputWriter scope = writer.scope(); Register shouldSkip = i.expression.accept(this)) {
+                writer.beqz(shouldSkip, elseLabel);
 
-            i.ifStatement.accept(this);
+                i.ifStatement.accept(this);
 
-            writer.b(endLabel);
+                writer.b(endLabel);
+            }
         }
 
         if (i.elseStatement == null) {
@@ -691,6 +1578,9 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
 
     @Override
     public Register visitWhile(While w) {
+        if (branchConditions)
+            return branchingWhile(w);
+
         String startLabel = whileLabel.enumLabel("start");
         String endLabel = whileLabel.enumLabel("end");
 
@@ -707,9 +1597,36 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
         return null;
     }
 
+    // the condition is tested at the end of the loop, entered by jumping to it: one branch per iteration
+    private Register branchingWhile(While w) {
+        String bodyLabel = whileLabel.enumLabel("body");
+        String conditionLabel = whileLabel.enumLabel("condition");
+
+        writer.comment("while (%s)", w.expression);
+        writer.b(conditionLabel);
+        try (OutputWriter scope = writer.scope()) {
+            writer.withLabel(bodyLabel).labelLine();
+            w.statement.accept(this);
+        }
+
+        writer.withLabel(conditionLabel).comment("while (%s)", w.expression);
+        try (OutputWriter scope = writer.scope()) {
+            branch(w.expression, true, bodyLabel, false);
+        }
+        return null;
+    }
+
     @Override
     public Register visitAssign(Assign a) {
         writer.comment(a);
+        Register variable = a.lhs instanceof VarExpr ? registerVariables.get(((VarExpr) a.lhs).vd) : null;
+        if (variable != null) {
+            try (OutputWriter scope = writer.scope(); Register rhsRegister = a.rhs.accept(this)) {
+                writer.move(variable, rhsRegister);
+            }
+            return null;
+        }
+
         try (OutputWriter scope = writer.scope(); Register lhsPointer = this.addressOf(a.lhs); Register rhsRegister = a.rhs.accept(this)) {
             storeValue(rhsRegister, a.rhs.type, lhsPointer, 0);
         }
@@ -719,19 +1636,79 @@ public class TextVisitor extends CodeGeneratorVisitor<Register> {
     @Override
     public Register visitReturn(Return r) {
         writer.comment(r);
+        if (inlinedEnd != null)
+            return inlinedReturn(r);
+        if (bodyLabel != null && r.expression instanceof FunCallExpr && ((FunCallExpr) r.expression).fd == function)
+            return tailCall((FunCallExpr) r.expression);
         try (OutputWriter scope = writer.scope()) {
             if (r.expression != null) {
                 try (Register rhsRegister = r.expression.accept(this)) {
                     writer.comment("Store return value at $v0");
-                    Register.v0.set(rhsRegister);
+                    writer.move(Register.v0, rhsRegister);
                 }
             } else {
                 writer.comment("Store default return value at $v0");
-                Register.v0.loadImmediate(0);
+                writer.li(Register.v0, 0);
+            }
+
+            // $ra is left with our return address when saving what we clobber
+            if (saveClobbered) {
+                writer.comment("Jump to epilogue");
+                writer.b(epilogueLabel);
+            } else {
+                writer.comment("Jump to epilogue (defined at $ra)");
+                writer.jr(Register.ra, epilogueLabel);
+            }
+        }
+        return null;
+    }
+
+
+    // a return from the body of an inlined call: its value is that of the call, whose end it jumps to
+    private Register inlinedReturn(Return r) {
+        try (OutputWriter scope = writer.scope()) {
+            if (r.expression != null) {
+                try (Register value = r.expression.accept(this)) {
+                    writer.move(inlinedResult, value);
+                }
+            } else {
+                writer.li(inlinedResult, 0);
+            }
+
+            // the blocks left have moved $sp by as much as frameOffset, unless the frame holds them
+            if (!frameLayout && frameOffset != inlinedFrameOffset)
+                writer.add(Register.sp, Register.sp, inlinedFrameOffset - frameOffset);
+            writer.b(inlinedEnd);
+        }
+        return null;
+    }
+
+
+    // return f(...) in f: the arguments are all evaluated before any parameter is reassigned (they may read them),
+    // then the body is started again in the same frame
+    private Register tailCall(FunCallExpr fc) {
+        try (OutputWriter scope = writer.scope()) {
+            Register[] values = new Register[fc.params.size()];
+            for (int i = 0; i < values.length; i++) {
+                writer.comment("Evaluating arg %d of value (%s)", i, fc.params.get(i));
+                values[i] = fc.params.get(i).accept(this);
+            }
+            for (int i = 0; i < values.length; i++) {
+                VarDecl vd = function.params.get(i);
+                Register variable = registerVariables.get(vd);
+                try (Register value = values[i]) {
+                    if (variable != null)
+                        writer.move(variable, value);
+                    else
+                        storeValue(value, vd.type, Register.fp, vd.getGenStackOffset());
+                }
             }
 
-            writer.comment("Jump to epilogue (defined at $ra)");
-            writer.jr(Register.ra);
+            // the blocks left have moved $sp by as much as frameOffset, unless the frame holds them
+            if (!frameLayout && frameOffset != bodyFrameOffset)
+                writer.add(Register.sp, Register.sp, bodyFrameOffset - frameOffset);
+            writer.comment("Jump back to the body of %s", function.name);
+            writer.b(bodyLabel);
         }
         return null;
     }
@@ -0,0 +1,119 @@
+package lexer;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Scanner which maps the whole source file into memory and decodes it into a single char[] up front.
+ * Besides the exception based peek()/next() inherited from Scanner (so the Tokeniser works unchanged),
+ * it exposes an index based API which reports the end of file with -1 instead of an EOFException.
+ */
+public class MappedScanner extends Scanner {
+
+    public static final int EOF = -1;
+
+    private final char[] buffer;
+    private final int length;
+    private int index = 0;
+
+    private int line = 1;
+    private int column = 0;
+
+    public MappedScanner(File source) throws IOException {
+        try (FileInputStream stream = new FileInputStream(source); FileChannel channel = stream.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // decode with the platform charset, exactly like the FileReader used by Scanner
+            CharBuffer chars = Charset.defaultCharset().decode(mapped);
+            this.buffer = chars.array();
+            this.length = chars.limit();
+        }
+    }
+
+    public MappedScanner(char[] source, int length) {
+        this.buffer = source;
+        this.length = length;
+    }
+
+    public MappedScanner(String source) {
+        this(source.toCharArray(), source.length());
+    }
+
+    @Override
+    public int getColumn() {
+        return column;
+    }
+
+    @Override
+    public int getLine() {
+        return line;
+    }
+
+    // the whole (decoded) source, only the first length() chars are valid
+    public char[] getBuffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    // index of the next character to be returned by next()
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean atEnd() {
+        return index >= length;
+    }
+
+    // returns the character i positions ahead of the current one (0 is the next character) or EOF
+    public int peekAt(int i) {
+        int at = index + i;
+        return at < length ? buffer[at] : EOF;
+    }
+
+    // returns the next character or EOF without consuming it
+    public int peekChar() {
+        return index < length ? buffer[index] : EOF;
+    }
+
+    // consumes and returns the next character or EOF
+    public int nextChar() {
+        if (index >= length)
+            return EOF;
+
+        char r = buffer[index++];
+        if (r == '\n' || r == '\r') {
+            line++;
+            column = 0;
+        } else {
+            column++;
+        }
+        return r;
+    }
+
+    @Override
+    public char peek() throws IOException {
+        if (index >= length)
+            throw new EOFException();
+        return buffer[index];
+    }
+
+    @Override
+    public char next() throws IOException {
+        int r = nextChar();
+        if (r == EOF)
+            throw new EOFException();
+        return (char) r;
+    }
+
+    @Override
+    public void close() {}
+
+}
@@ -0,0 +1,111 @@
+package lexer;
+
+import java.util.Arrays;
+
+/**
+ * Intern pool for identifiers, created by the Tokeniser.
+ *
+ * Every distinct identifier gets a dense int id (0, 1, 2, ...) and a single canonical String instance.
+ * Since the names of the AST come from here, the symbol tables in sem and the field and label lookups
+ * in gen mostly hit identity comparisons and cached hash codes instead of comparing and hashing characters
+ * over and over; names built elsewhere (e.g. "main" or the predefined functions) are compared with equals().
+ * The instances are not String.intern()ed: the table belongs to one compilation and goes away with it,
+ * where the JVM wide pool would keep every identifier ever compiled by a long running server.
+ *
+ * Looking up a name that is already in the table does not allocate.
+ */
+public class NameTable {
+
+    private static final int INITIAL_CAPACITY = 256; // must be a power of 2
+
+    // open addressing table of (id + 1), 0 marks an empty slot
+    private int[] slots = new int[INITIAL_CAPACITY];
+
+    private char[][] chars = new char[INITIAL_CAPACITY / 2][];
+    private String[] names = new String[INITIAL_CAPACITY / 2];
+    private int[] hashes = new int[INITIAL_CAPACITY / 2];
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int intern(String name) {
+        char[] value = name.toCharArray();
+        return intern(value, 0, value.length);
+    }
+
+    // returns the id of buffer[offset, offset + length), adding it to the table if necessary
+    public int intern(char[] buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0)
+                return add(buffer, offset, length, hash, slot);
+            if (hashes[id] == hash && matches(chars[id], buffer, offset, length))
+                return id;
+        }
+    }
+
+    // returns the canonical instance of buffer[offset, offset + length)
+    public String internName(char[] buffer, int offset, int length) {
+        return names[intern(buffer, offset, length)];
+    }
+
+    public String internName(String name) {
+        return names[intern(name)];
+    }
+
+    private int add(char[] buffer, int offset, int length, int hash, int slot) {
+        int id = size++;
+        if (id == names.length) {
+            chars = Arrays.copyOf(chars, id * 2);
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+
+        chars[id] = Arrays.copyOfRange(buffer, offset, offset + length);
+        names[id] = new String(chars[id]);
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+
+        // keep the load factor at or below 1/2
+        if (size * 2 > slots.length)
+            rehash();
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+    }
+
+    // same function as String.hashCode, spread a little as the low bits are used to index the table
+    private static int hash(char[] buffer, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++)
+            h = 31 * h + buffer[i];
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(char[] name, char[] buffer, int offset, int length) {
+        if (name.length != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (name[i] != buffer[offset + i])
+                return false;
+        }
+        return true;
+    }
+}
@@ -17,6 +17,9 @@ public class Scanner {
         input = new BufferedReader(new FileReader(source));
     }
 
+    // used by scanners which do not read from a Reader (see MappedScanner)
+    protected Scanner() {}
+
 
     public int getColumn() {
         return column;
@@ -0,0 +1,126 @@
+package lexer;
+
+import lexer.Token.TokenClass;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packed token stream produced by Tokeniser.tokenise(): one entry per token stored column-wise in
+ * int arrays (token class, source offset and length, line, column and value) instead of one Token and
+ * one Position object per token. Tokens are addressed by index, the last one is always EOF.
+ *
+ * The value of an IDENTIFIER is its NameTable id. String and char literals are sliced from the source
+ * between their quotes unless they contained escapes, in which case the value indexes the decoded text.
+ */
+public class TokenBuffer {
+
+    private static final TokenClass[] CLASSES = TokenClass.values();
+
+    private final char[] source;
+    private final NameTable names;
+
+    private int[] classes;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] columns;
+    private int[] values;
+    private final List<String> texts = new ArrayList<>();
+    private int size = 0;
+
+    // source may be null, all token text is then kept as decoded text
+    TokenBuffer(char[] source, NameTable names, int capacity) {
+        this.source = source;
+        this.names = names;
+        capacity = Math.max(capacity, 16);
+        classes = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+        values = new int[capacity];
+    }
+
+    void add(TokenClass tokenClass, int start, int length, int line, int column, int name, String text) {
+        if (size == classes.length) {
+            int capacity = size * 2;
+            classes = Arrays.copyOf(classes, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        classes[size] = tokenClass.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        columns[size] = column;
+        if (tokenClass == TokenClass.IDENTIFIER && name >= 0) {
+            values[size] = name;
+        } else if (text != null) {
+            values[size] = texts.size();
+            texts.add(text);
+        } else {
+            values[size] = -1;
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public NameTable getNames() {
+        return names;
+    }
+
+    // indices past the end refer to the final EOF token
+    public TokenClass tokenClass(int i) {
+        return CLASSES[classes[Math.min(i, size - 1)]];
+    }
+
+    public int line(int i) {
+        return lines[Math.min(i, size - 1)];
+    }
+
+    public int column(int i) {
+        return columns[Math.min(i, size - 1)];
+    }
+
+    // same as Token.data
+    public String data(int i) {
+        i = Math.min(i, size - 1);
+        TokenClass tokenClass = CLASSES[classes[i]];
+        if (tokenClass == TokenClass.IDENTIFIER && source != null)
+            return names.name(values[i]);
+        if (values[i] >= 0)
+            return texts.get(values[i]);
+        if (source == null)
+            return "";
+
+        switch (tokenClass) {
+            case INT_LITERAL:
+                return new String(source, starts[i], lengths[i]);
+            case STRING_LITERAL:
+            case CHAR_LITERAL:
+                return new String(source, starts[i] + 1, lengths[i] - 2);
+            default:
+                return "";
+        }
+    }
+
+    public Token token(int i) {
+        return new Token(tokenClass(i), data(i), line(i), column(i));
+    }
+
+    // same as token(i).toString()
+    public String toString(int i) {
+        TokenClass tokenClass = tokenClass(i);
+        String data = data(i);
+        return data.isEmpty() ? tokenClass.toString() : tokenClass + "(" + data + ")";
+    }
+}
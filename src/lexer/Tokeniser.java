@@ -4,6 +4,7 @@ import lexer.Token.TokenClass;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.PrintStream;
 
 /**
  * @author sfilipiak
@@ -12,22 +13,43 @@ public class Tokeniser {
 
     private Scanner scanner;
 
+    // where lexing errors are reported
+    private final PrintStream out;
+
+    // set when the scanner exposes its whole source as a char[], enables the table driven fast path
+    private final MappedScanner mapped;
+
     private int error = 0;
     public int getErrorCount() {
 	return this.error;
     }
 
+    // every identifier handed out by this tokeniser is the canonical instance from this table
+    private final NameTable names = new NameTable();
+    public NameTable getNames() {
+        return names;
+    }
+
     public Tokeniser(Scanner scanner) {
+        this(scanner, System.out);
+    }
+
+    public Tokeniser(Scanner scanner, PrintStream out) {
         this.scanner = scanner;
+        this.out = out;
+        this.mapped = (scanner instanceof MappedScanner) ? (MappedScanner) scanner : null;
     }
 
     private void error(char c, int line, int col) {
-        System.out.println("Lexing error: unrecognised character ("+c+") at "+line+":"+col);
+        out.println("Lexing error: unrecognised character ("+c+") at "+line+":"+col);
 	error++;
     }
 
 
     public Token nextToken() {
+        if (mapped != null)
+            return nextFast();
+
         Token result;
         try {
              result = next();
@@ -54,9 +76,30 @@ public class Tokeniser {
         // get the next character
         char c = scanner.next();
 
-        // skip white spaces
-        if (Character.isWhitespace(c))
-            return next();
+        // skip white spaces and comments iteratively, long runs of them must not grow the stack
+        while (true) {
+            if (Character.isWhitespace(c)) {
+                // skip white spaces
+            } else if (c == '/' && scanner.peek() == '/') {
+                //recognizes the single line comment
+                while (scanner.peek() != 0 && scanner.peek() != '\n')
+                    scanner.next();
+                scanner.next();
+            } else if (c == '/' && scanner.peek() == '*') {
+                //recognises the multi line comment
+                scanner.next();
+                c = scanner.next();
+                while (!(c == '*' && scanner.peek() == '/'))
+                    c = scanner.next();
+                scanner.next();
+            } else {
+                break;
+            }
+
+            line = scanner.getLine();
+            column = scanner.getColumn();
+            c = scanner.next();
+        }
 
         // recognises the #include
         if (c == '#') {
@@ -78,24 +121,6 @@ public class Tokeniser {
             }
         }
 
-        //recognizes the single line comment
-        if (c == '/' && scanner.peek() == '/') {
-            while (scanner.peek() != 0 && scanner.peek() != '\n')
-                scanner.next();
-            scanner.next();
-            return next();
-        }
-
-        //recognises the multi line comment
-        if (c == '/' && scanner.peek() == '*') {
-            scanner.next();
-            c = scanner.next();
-            while (!(c == '*' && scanner.peek() == '/'))
-                c = scanner.next();
-            scanner.next();
-            return next();
-        }
-
         // recognises the string literal
         if (c == '"') {
             StringBuilder data = new StringBuilder();
@@ -235,7 +260,7 @@ public class Tokeniser {
                 return new Token(TokenClass.SIZEOF, line, column);
 
             // recognizes the identifier
-            return new Token(TokenClass.IDENTIFIER, data.toString(), line, column);
+            return new Token(TokenClass.IDENTIFIER, names.internName(data.toString()), line, column);
         }
 
 
@@ -336,4 +361,389 @@ public class Tokeniser {
     }
 
 
+    /*
+     * Table driven fast path, used when the source is available as a char[] (MappedScanner).
+     * It recognises exactly the same tokens (and reports the same errors) as next(), but dispatches
+     * on a character class table, looks keywords up in a perfect hash table and slices the token text
+     * straight out of the source buffer. Whitespace and comments are skipped iteratively.
+     */
+
+    // character classes, only defined for ASCII; anything else goes through the slow Character checks
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte DIGIT = 2;
+    private static final byte ALPHA = 3;  // letters and '_'
+    private static final byte SINGLE = 4; // tokens made of a single character, see SINGLE_TOKENS
+
+    private static final byte[] CLASSES = new byte[128];
+    private static final TokenClass[] SINGLE_TOKENS = new TokenClass[128];
+
+    // perfect hash of the keywords: (first + 6 * last + length) & 15 is unique for each of them
+    private static final char[][] KEYWORDS = new char[16][];
+    private static final TokenClass[] KEYWORD_CLASSES = new TokenClass[16];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c))
+                CLASSES[c] = SPACE;
+            else if (Character.isDigit(c))
+                CLASSES[c] = DIGIT;
+            else if (Character.isLetter(c) || c == '_')
+                CLASSES[c] = ALPHA;
+        }
+
+        String singles = "{}()[];,+-*%.";
+        TokenClass[] singleClasses = {TokenClass.LBRA, TokenClass.RBRA, TokenClass.LPAR, TokenClass.RPAR, TokenClass.LSBR, TokenClass.RSBR,
+                TokenClass.SC, TokenClass.COMMA, TokenClass.PLUS, TokenClass.MINUS, TokenClass.ASTERIX, TokenClass.REM, TokenClass.DOT};
+        for (int i = 0; i < singles.length(); i++) {
+            CLASSES[singles.charAt(i)] = SINGLE;
+            SINGLE_TOKENS[singles.charAt(i)] = singleClasses[i];
+        }
+
+        String[] keywords = {"void", "char", "int", "if", "else", "while", "return", "struct", "sizeof"};
+        TokenClass[] keywordClasses = {TokenClass.VOID, TokenClass.CHAR, TokenClass.INT, TokenClass.IF, TokenClass.ELSE,
+                TokenClass.WHILE, TokenClass.RETURN, TokenClass.STRUCT, TokenClass.SIZEOF};
+        for (int i = 0; i < keywords.length; i++) {
+            char[] keyword = keywords[i].toCharArray();
+            int h = keywordHash(keyword[0], keyword[keyword.length - 1], keyword.length);
+            if (KEYWORDS[h] != null)
+                throw new RuntimeException("keyword hash collision between " + keywords[i] + " and " + new String(KEYWORDS[h]));
+            KEYWORDS[h] = keyword;
+            KEYWORD_CLASSES[h] = keywordClasses[i];
+        }
+    }
+
+    private static int keywordHash(char first, char last, int length) {
+        return (first + 6 * last + length) & 15;
+    }
+
+    // c may be MappedScanner.EOF, which belongs to no class
+    private static boolean isSpace(int c) {
+        return c < 128 ? c >= 0 && CLASSES[c] == SPACE : Character.isWhitespace(c);
+    }
+
+    private static boolean isDigit(int c) {
+        return c < 128 ? c >= 0 && CLASSES[c] == DIGIT : Character.isDigit(c);
+    }
+
+    private static boolean isIdentifierStart(int c) {
+        return c < 128 ? c >= 0 && CLASSES[c] == ALPHA : Character.isLetter(c);
+    }
+
+    private static boolean isIdentifierPart(int c) {
+        return c < 128 ? c >= 0 && (CLASSES[c] == ALPHA || CLASSES[c] == DIGIT) : Character.isLetterOrDigit(c);
+    }
+
+    private static TokenClass keyword(char[] buffer, int start, int length) {
+        int h = keywordHash(buffer[start], buffer[start + length - 1], length);
+        char[] keyword = KEYWORDS[h];
+        if (keyword == null || keyword.length != length)
+            return null;
+        for (int i = 0; i < length; i++) {
+            if (keyword[i] != buffer[start + i])
+                return null;
+        }
+        return KEYWORD_CLASSES[h];
+    }
+
+    // escaped character following a backslash, or -1 if the escape sequence is invalid
+    private static int escape(int c) {
+        switch (c) {
+            case 't': return '\t';
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 'f': return '\f';
+            case '\'': return '\'';
+            case '"': return '"';
+            case '\\': return '\\';
+            case '0': return '\0';
+            default: return -1;
+        }
+    }
+
+    // the token recognised by the last call to scan(): position, source range and value
+    private int scanLine;
+    private int scanColumn;
+    private int scanStart;
+    private int scanEnd;
+    private int scanName;     // NameTable id of an IDENTIFIER
+    private String scanText;  // decoded STRING_LITERAL or CHAR_LITERAL containing escapes, null otherwise
+
+    private Token nextFast() {
+        TokenClass tokenClass = scan();
+        return new Token(tokenClass, scannedData(tokenClass), scanLine, scanColumn);
+    }
+
+    private String scannedData(TokenClass tokenClass) {
+        switch (tokenClass) {
+            case IDENTIFIER:
+                return names.name(scanName);
+            case INT_LITERAL:
+                return new String(mapped.getBuffer(), scanStart, scanEnd - scanStart);
+            case STRING_LITERAL:
+            case CHAR_LITERAL:
+                // the text between the quotes, unless it had to be decoded
+                return scanText != null ? scanText : new String(mapped.getBuffer(), scanStart + 1, scanEnd - scanStart - 2);
+            default:
+                return "";
+        }
+    }
+
+    /*
+     * Lexes the whole input into a packed TokenBuffer, the last token is always EOF.
+     * Identifiers are stored as NameTable ids and literals as ranges of the source,
+     * so apart from decoded escapes no per token objects are allocated.
+     */
+    public TokenBuffer tokenise() {
+        if (mapped == null) {
+            // no source buffer to slice the token text from, keep the text itself
+            TokenBuffer tokens = new TokenBuffer(null, names, 1024);
+            Token t;
+            do {
+                t = nextToken();
+                tokens.add(t.tokenClass, 0, 0, t.position.getLine(), t.position.getColumn(), -1, t.data.isEmpty() ? null : t.data);
+            } while (t.tokenClass != TokenClass.EOF);
+            return tokens;
+        }
+
+        TokenBuffer tokens = new TokenBuffer(mapped.getBuffer(), names, mapped.length() / 4 + 16);
+        TokenClass tokenClass;
+        do {
+            tokenClass = scan();
+            tokens.add(tokenClass, scanStart, scanEnd - scanStart, scanLine, scanColumn, tokenClass == TokenClass.IDENTIFIER ? scanName : -1, scanText);
+        } while (tokenClass != TokenClass.EOF);
+        return tokens;
+    }
+
+    private TokenClass eof() {
+        scanLine = mapped.getLine();
+        scanColumn = mapped.getColumn();
+        scanStart = scanEnd = mapped.getIndex();
+        return TokenClass.EOF;
+    }
+
+    private TokenClass token(TokenClass tokenClass) {
+        scanEnd = mapped.getIndex();
+        return tokenClass;
+    }
+
+    private TokenClass invalid(char c, int line, int column) {
+        error(c, line, column);
+        return token(TokenClass.INVALID);
+    }
+
+    /*
+     * Just like next(), the file ending in the middle of a token produces an EOF token.
+     */
+    private TokenClass scan() {
+        final MappedScanner in = mapped;
+        final char[] buffer = in.getBuffer();
+
+        int line;
+        int column;
+        int c;
+
+        scanText = null;
+
+        // skip white spaces and comments
+        while (true) {
+            line = in.getLine();
+            column = in.getColumn();
+            c = in.nextChar();
+            if (c == MappedScanner.EOF)
+                return eof();
+
+            if (isSpace(c))
+                continue;
+
+            if (c != '/')
+                break;
+
+            int p = in.peekChar();
+            if (p == MappedScanner.EOF)
+                return eof();
+            if (p == '/') {
+                // single line comment
+                while ((p = in.peekChar()) != 0 && p != '\n' && p != MappedScanner.EOF)
+                    in.nextChar();
+                if (in.nextChar() == MappedScanner.EOF)
+                    return eof();
+            } else if (p == '*') {
+                // multi line comment
+                in.nextChar();
+                c = in.nextChar();
+                while (!(c == '*' && in.peekChar() == '/')) {
+                    if (c == MappedScanner.EOF)
+                        return eof();
+                    c = in.nextChar();
+                }
+                in.nextChar();
+            } else {
+                break;
+            }
+        }
+
+        scanLine = line;
+        scanColumn = column;
+        scanStart = in.getIndex() - 1;
+
+        if (c == '/')
+            return token(TokenClass.DIV);
+
+        byte cls = c < 128 ? CLASSES[c] : OTHER;
+
+        if (cls == SINGLE)
+            return token(SINGLE_TOKENS[c]);
+
+        if (cls == ALPHA || (cls == OTHER && isIdentifierStart(c))) {
+            int p;
+            while (isIdentifierPart(p = in.peekChar()))
+                in.nextChar();
+            if (p == MappedScanner.EOF)
+                return eof();
+
+            int length = in.getIndex() - scanStart;
+            TokenClass keyword = keyword(buffer, scanStart, length);
+            if (keyword != null)
+                return token(keyword);
+            scanName = names.intern(buffer, scanStart, length);
+            return token(TokenClass.IDENTIFIER);
+        }
+
+        if (cls == DIGIT || (cls == OTHER && isDigit(c))) {
+            int p;
+            while (isDigit(p = in.peekChar()))
+                in.nextChar();
+            if (p == MappedScanner.EOF)
+                return eof();
+            return token(TokenClass.INT_LITERAL);
+        }
+
+        switch (c) {
+            case '#': {
+                // recognises the #include
+                String include = "include";
+                char last = (char) c;
+                int matched = 0;
+                for (; matched < include.length(); matched++) {
+                    int p = in.peekChar();
+                    if (p == MappedScanner.EOF)
+                        return eof();
+                    if (p != include.charAt(matched))
+                        break;
+                    last = (char) in.nextChar();
+                }
+                if (matched == include.length())
+                    return token(TokenClass.INCLUDE);
+                return invalid(last, line, column);
+            }
+            case '"': {
+                // recognises the string literal, only copies through a StringBuilder when it contains escapes
+                int start = in.getIndex();
+                StringBuilder data = null;
+                int p;
+                while ((p = in.peekChar()) != '"') {
+                    if (p == MappedScanner.EOF)
+                        return eof();
+                    if (p == '\\') {
+                        if (data == null)
+                            data = new StringBuilder().append(buffer, start, in.getIndex() - start);
+                        in.nextChar();
+                        p = in.peekChar();
+                        if (p == MappedScanner.EOF)
+                            return eof();
+                        int escaped = escape(p);
+                        if (escaped < 0) {
+                            in.nextChar();
+                            return invalid((char) c, line, column);
+                        }
+                        data.append((char) escaped);
+                    } else if (data != null) {
+                        data.append((char) p);
+                    }
+                    in.nextChar();
+                }
+                in.nextChar();
+                if (data != null)
+                    scanText = data.toString();
+                return token(TokenClass.STRING_LITERAL);
+            }
+            case '\'': {
+                // recognises the char literal
+                int p = in.peekChar();
+                if (p == MappedScanner.EOF)
+                    return eof();
+                if (p == '\\') {
+                    in.nextChar();
+                    p = in.peekChar();
+                    if (p == MappedScanner.EOF)
+                        return eof();
+                    int value = escape(p);
+                    if (value < 0) {
+                        in.nextChar();
+                        return invalid((char) c, line, column);
+                    }
+                    scanText = String.valueOf((char) value);
+                }
+                char last = (char) in.nextChar();
+                p = in.peekChar();
+                if (p == MappedScanner.EOF)
+                    return eof();
+                if (p != '\'')
+                    return invalid(last, line, column);
+                in.nextChar();
+                return token(TokenClass.CHAR_LITERAL);
+            }
+            case '=':
+            case '<':
+            case '>':
+            case '!':
+            case '&':
+            case '|': {
+                int p = in.peekChar();
+                if (p == MappedScanner.EOF)
+                    return eof();
+                switch (c) {
+                    case '=':
+                        if (p != '=')
+                            return token(TokenClass.ASSIGN);
+                        in.nextChar();
+                        return token(TokenClass.EQ);
+                    case '<':
+                        if (p != '=')
+                            return token(TokenClass.LT);
+                        in.nextChar();
+                        return token(TokenClass.LE);
+                    case '>':
+                        if (p != '=')
+                            return token(TokenClass.GT);
+                        in.nextChar();
+                        return token(TokenClass.GE);
+                    case '!':
+                        if (p != '=')
+                            break;
+                        in.nextChar();
+                        return token(TokenClass.NE);
+                    case '&':
+                        if (p != '&')
+                            break;
+                        in.nextChar();
+                        return token(TokenClass.AND);
+                    default:
+                        if (p != '|')
+                            break;
+                        in.nextChar();
+                        return token(TokenClass.OR);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+
+        // if we reach this point, it means we did not recognise a valid token
+        return invalid((char) c, line, column);
+    }
+
 }
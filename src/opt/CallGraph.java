@@ -0,0 +1,124 @@
+package opt;
+
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which functions of a program call which, as given by the declarations FunCallExpr.fd the name analysis has set.
+ * The predefined functions are left out: they do not call anything, nor are they generated as functions.
+ */
+public class CallGraph {
+    private final Map<FunDecl, Set<FunDecl>> callees = new LinkedHashMap<>(); // in the order of the program
+
+    public CallGraph(Program program) {
+        for (FunDecl fd : program.funDecls) {
+            if (!fd.isPreDefined)
+                callees.put(fd, calledBy(fd.block));
+        }
+    }
+
+    // the functions the statement calls, predefined ones aside
+    public static Set<FunDecl> calledBy(Stmt stmt) {
+        Set<FunDecl> called = new LinkedHashSet<>();
+        collect(stmt, called);
+        return called;
+    }
+
+    // the functions fd calls
+    public Set<FunDecl> callees(FunDecl fd) {
+        return callees.get(fd);
+    }
+
+    // whether fd calls itself, directly or through other functions
+    public boolean isRecursive(FunDecl fd) {
+        return reachableFrom(callees(fd)).contains(fd);
+    }
+
+    // the functions called from those given, directly or not (without them unless they are called as well)
+    public Set<FunDecl> reachableFrom(Set<FunDecl> from) {
+        Set<FunDecl> reached = new HashSet<>();
+        List<FunDecl> pending = new ArrayList<>();
+        for (FunDecl fd : from)
+            pending.addAll(callees(fd));
+        while (!pending.isEmpty()) {
+            FunDecl fd = pending.remove(pending.size() - 1);
+            if (reached.add(fd))
+                pending.addAll(callees(fd));
+        }
+        return reached;
+    }
+
+    // every function after those it calls, but for the calls closing a cycle
+    public List<FunDecl> calleesFirst() {
+        List<FunDecl> order = new ArrayList<>(callees.size());
+        Set<FunDecl> visited = new HashSet<>();
+        for (FunDecl fd : callees.keySet())
+            postOrder(fd, visited, order);
+        return order;
+    }
+
+    private void postOrder(FunDecl fd, Set<FunDecl> visited, List<FunDecl> order) {
+        if (!visited.add(fd))
+            return;
+        for (FunDecl callee : callees(fd))
+            postOrder(callee, visited, order);
+        order.add(fd);
+    }
+
+    private static void collect(Stmt stmt, Set<FunDecl> called) {
+        if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements)
+                collect(s, called);
+        } else if (stmt instanceof If) {
+            If i = (If) stmt;
+            collect(i.expression, called);
+            collect(i.ifStatement, called);
+            if (i.elseStatement != null)
+                collect(i.elseStatement, called);
+        } else if (stmt instanceof While) {
+            collect(((While) stmt).expression, called);
+            collect(((While) stmt).statement, called);
+        } else if (stmt instanceof ExprStmt) {
+            collect(((ExprStmt) stmt).expression, called);
+        } else if (stmt instanceof Assign) {
+            collect(((Assign) stmt).lhs, called);
+            collect(((Assign) stmt).rhs, called);
+        } else if (stmt instanceof Return && ((Return) stmt).expression != null) {
+            collect(((Return) stmt).expression, called);
+        }
+    }
+
+    private static void collect(Expr expr, Set<FunDecl> called) {
+        if (expr instanceof FunCallExpr) {
+            FunCallExpr fc = (FunCallExpr) expr;
+            if (!fc.fd.isPreDefined)
+                called.add(fc.fd);
+            for (Expr param : fc.params)
+                collect(param, called);
+        } else if (expr instanceof InlinedCallExpr) {
+            // the function is not called any more, what it calls is, from its copy
+            for (Expr param : ((InlinedCallExpr) expr).call.params)
+                collect(param, called);
+            collect(((InlinedCallExpr) expr).block, called);
+        } else if (expr instanceof BinOp) {
+            collect(((BinOp) expr).lhs, called);
+            collect(((BinOp) expr).rhs, called);
+        } else if (expr instanceof ArrayAccessExpr) {
+            collect(((ArrayAccessExpr) expr).name, called);
+            collect(((ArrayAccessExpr) expr).index, called);
+        } else if (expr instanceof FieldAccessExpr) {
+            collect(((FieldAccessExpr) expr).name, called);
+        } else if (expr instanceof ValueAtExpr) {
+            collect(((ValueAtExpr) expr).expression, called);
+        } else if (expr instanceof TypecastExpr) {
+            collect(((TypecastExpr) expr).expression, called);
+        }
+    }
+}
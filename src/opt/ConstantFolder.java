@@ -0,0 +1,329 @@
+package opt;
+
+import ast.*;
+
+import java.util.List;
+
+/**
+ * Evaluates at compile time what does not depend on the program's state:
+ *   * operations on literals, on 32 bits as MIPS does them (those which trap, an addition or subtraction which
+ *     overflows, and those which are undefined, a division or modulo by zero or which overflows, are left as they are),
+ *   * sizeof, and casts of a character literal to int,
+ *   * additions of 0, multiplications and divisions by 1, multiplications by 0 of an expression without calls,
+ *   * the negations the parser makes into 0 - e: of a literal, of a negation, and when added or subtracted.
+ * Expressions are rebuilt (their nodes are immutable) while blocks and calls are updated in place, the declarations
+ * they refer to are left as they are.
+ */
+public class ConstantFolder implements ASTVisitor<ASTNode> {
+
+    public void fold(Program program) {
+        for (FunDecl fd : program.funDecls) {
+            if (!fd.isPreDefined)
+                fd.block.accept(this);
+        }
+    }
+
+    private Expr fold(Expr expr) {
+        return (Expr) expr.accept(this);
+    }
+
+    private Stmt fold(Stmt stmt) {
+        return stmt == null ? null : (Stmt) stmt.accept(this);
+    }
+
+    private static IntLiteral literal(int value) {
+        IntLiteral literal = new IntLiteral(value);
+        literal.type = BaseType.INT;
+        return literal;
+    }
+
+    private static <E extends Expr> E typed(E expr, Type type) {
+        expr.type = type;
+        return expr;
+    }
+
+    // the value of an int or char literal, null otherwise
+    private static Integer valueOf(Expr expr) {
+        if (expr instanceof IntLiteral)
+            return ((IntLiteral) expr).value;
+        if (expr instanceof ChrLiteral)
+            return (int) ((ChrLiteral) expr).value;
+        return null;
+    }
+
+    private static boolean isValue(Expr expr, int value) {
+        Integer literal = valueOf(expr);
+        return literal != null && literal == value;
+    }
+
+    // 0 - e, the negation of e
+    private static Expr negated(Expr expr) {
+        if (expr instanceof BinOp) {
+            BinOp binOp = (BinOp) expr;
+            if (binOp.op == Op.SUB && isValue(binOp.lhs, 0))
+                return binOp.rhs;
+        }
+        return null;
+    }
+
+    // whether evaluating the expression can be skipped, it does not make any call
+    private static boolean isPure(Expr expr) {
+        if (expr instanceof IntLiteral || expr instanceof ChrLiteral || expr instanceof StrLiteral
+                || expr instanceof VarExpr || expr instanceof SizeOfExpr)
+            return true;
+        if (expr instanceof BinOp)
+            return isPure(((BinOp) expr).lhs) && isPure(((BinOp) expr).rhs);
+        if (expr instanceof ArrayAccessExpr)
+            return isPure(((ArrayAccessExpr) expr).name) && isPure(((ArrayAccessExpr) expr).index);
+        if (expr instanceof FieldAccessExpr)
+            return isPure(((FieldAccessExpr) expr).name);
+        if (expr instanceof ValueAtExpr)
+            return isPure(((ValueAtExpr) expr).expression);
+        if (expr instanceof TypecastExpr)
+            return isPure(((TypecastExpr) expr).expression);
+        return false;
+    }
+
+    // the value of lhs op rhs, null when it is left to the program
+    private static Integer evaluate(int lhs, Op op, int rhs) {
+        switch (op) {
+            // add and sub trap on overflow, mul keeps the low 32 bits
+            case ADD:
+            case SUB:
+                long exact = op == Op.ADD ? (long) lhs + rhs : (long) lhs - rhs;
+                return exact == (int) exact ? (Integer) (int) exact : null;
+            case MUL: return lhs * rhs;
+            case DIV:
+            case MOD:
+                if (rhs == 0 || (lhs == Integer.MIN_VALUE && rhs == -1))
+                    return null;
+                return op == Op.DIV ? lhs / rhs : lhs % rhs;
+            case GT: return lhs > rhs ? 1 : 0;
+            case LT: return lhs < rhs ? 1 : 0;
+            case GE: return lhs >= rhs ? 1 : 0;
+            case LE: return lhs <= rhs ? 1 : 0;
+            case NE: return lhs != rhs ? 1 : 0;
+            case EQ: return lhs == rhs ? 1 : 0;
+            // as the generated code does: the rhs of && is only true when positive
+            case AND: return lhs != 0 && rhs > 0 ? 1 : 0;
+            case OR: return lhs != 0 || rhs != 0 ? 1 : 0;
+            default: return null;
+        }
+    }
+
+    @Override
+    public ASTNode visitBinOp(BinOp bo) {
+        Expr lhs = fold(bo.lhs);
+        Expr rhs = fold(bo.rhs);
+        Integer l = valueOf(lhs);
+        Integer r = valueOf(rhs);
+
+        if (l != null && r != null) {
+            Integer value = evaluate(l, bo.op, r);
+            if (value != null)
+                return literal(value);
+        }
+
+        switch (bo.op) {
+            case ADD:
+                if (isValue(lhs, 0))
+                    return rhs;
+                if (isValue(rhs, 0))
+                    return lhs;
+                // a + (0 - b) => a - b, (0 - a) + b => b - a (when evaluating b first cannot change a)
+                if (negated(rhs) != null)
+                    return typed(new BinOp(lhs, Op.SUB, negated(rhs)), bo.type);
+                if (negated(lhs) != null && isPure(lhs) && isPure(rhs))
+                    return typed(new BinOp(rhs, Op.SUB, negated(lhs)), bo.type);
+                break;
+            case SUB:
+                if (isValue(rhs, 0))
+                    return lhs;
+                // 0 - (0 - a) => a, a - (0 - b) => a + b
+                if (negated(rhs) != null)
+                    return isValue(lhs, 0) ? negated(rhs) : typed(new BinOp(lhs, Op.ADD, negated(rhs)), bo.type);
+                break;
+            case MUL:
+                if (isValue(lhs, 1))
+                    return rhs;
+                if (isValue(rhs, 1))
+                    return lhs;
+                // (0 - a) * -1 => a, not a * -1 => 0 - a: the subtraction traps on -2^31 where mul wraps around
+                if (isValue(rhs, -1) && negated(lhs) != null)
+                    return negated(lhs);
+                if ((isValue(lhs, 0) && isPure(rhs)) || (isValue(rhs, 0) && isPure(lhs)))
+                    return literal(0);
+                break;
+            case DIV:
+                if (isValue(rhs, 1))
+                    return lhs;
+                break;
+            case AND:
+                // rhs is not evaluated when lhs is false
+                if (isValue(lhs, 0))
+                    return literal(0);
+                break;
+            case OR:
+                if (l != null && l != 0)
+                    return literal(1);
+                break;
+            default:
+                break;
+        }
+
+        if (lhs == bo.lhs && rhs == bo.rhs)
+            return bo;
+        return typed(new BinOp(lhs, bo.op, rhs), bo.type);
+    }
+
+    @Override
+    public ASTNode visitSizeOfExpr(SizeOfExpr so) {
+        return literal(so.sizeOfType.sizeOf());
+    }
+
+    @Override
+    public ASTNode visitTypecastExpr(TypecastExpr tc) {
+        Expr expression = fold(tc.expression);
+        if (tc.type == BaseType.INT && expression instanceof ChrLiteral)
+            return literal(((ChrLiteral) expression).value);
+        if (expression == tc.expression)
+            return tc;
+        return typed(new TypecastExpr(tc.castType, expression), tc.type);
+    }
+
+    @Override
+    public ASTNode visitArrayAccessExpr(ArrayAccessExpr aa) {
+        Expr name = fold(aa.name);
+        Expr index = fold(aa.index);
+        if (name == aa.name && index == aa.index)
+            return aa;
+        return typed(new ArrayAccessExpr(name, index), aa.type);
+    }
+
+    @Override
+    public ASTNode visitFieldAccessExpr(FieldAccessExpr fa) {
+        Expr name = fold(fa.name);
+        if (name == fa.name)
+            return fa;
+        return typed(new FieldAccessExpr(name, fa.field), fa.type);
+    }
+
+    @Override
+    public ASTNode visitValueAtExpr(ValueAtExpr va) {
+        Expr expression = fold(va.expression);
+        if (expression == va.expression)
+            return va;
+        return typed(new ValueAtExpr(expression), va.type);
+    }
+
+    @Override
+    public ASTNode visitFunCallExpr(FunCallExpr fc) {
+        List<Expr> params = fc.params;
+        for (int i = 0; i < params.size(); i++)
+            params.set(i, fold(params.get(i)));
+        return fc;
+    }
+
+    @Override
+    public ASTNode visitInlinedCallExpr(InlinedCallExpr ic) {
+        visitFunCallExpr(ic.call);
+        ic.block.accept(this);
+        return ic;
+    }
+
+    @Override
+    public ASTNode visitIntLiteral(IntLiteral il) { return il; }
+
+    @Override
+    public ASTNode visitStrLiteral(StrLiteral sl) { return sl; }
+
+    @Override
+    public ASTNode visitChrLiteral(ChrLiteral cl) { return cl; }
+
+    @Override
+    public ASTNode visitVarExpr(VarExpr v) { return v; }
+
+    // STATEMENTS
+
+    @Override
+    public ASTNode visitBlock(Block b) {
+        List<Stmt> statements = b.statements;
+        for (int i = 0; i < statements.size(); i++)
+            statements.set(i, fold(statements.get(i)));
+        return b;
+    }
+
+    @Override
+    public ASTNode visitExprStmt(ExprStmt es) {
+        Expr expression = fold(es.expression);
+        return expression == es.expression ? es : new ExprStmt(expression);
+    }
+
+    @Override
+    public ASTNode visitWhile(While w) {
+        Expr expression = fold(w.expression);
+        Stmt statement = fold(w.statement);
+        return expression == w.expression && statement == w.statement ? w : new While(expression, statement);
+    }
+
+    @Override
+    public ASTNode visitIf(If i) {
+        Expr expression = fold(i.expression);
+        Stmt ifStatement = fold(i.ifStatement);
+        Stmt elseStatement = fold(i.elseStatement);
+        if (expression == i.expression && ifStatement == i.ifStatement && elseStatement == i.elseStatement)
+            return i;
+        return new If(expression, ifStatement, elseStatement);
+    }
+
+    @Override
+    public ASTNode visitAssign(Assign a) {
+        Expr lhs = fold(a.lhs);
+        Expr rhs = fold(a.rhs);
+        return lhs == a.lhs && rhs == a.rhs ? a : new Assign(lhs, rhs);
+    }
+
+    @Override
+    public ASTNode visitReturn(Return r) {
+        if (r.expression == null)
+            return r;
+        Expr expression = fold(r.expression);
+        return expression == r.expression ? r : new Return(expression);
+    }
+
+    // DECLARATIONS AND TYPES, left as they are
+
+    @Override
+    public ASTNode visitProgram(Program p) {
+        fold(p);
+        return p;
+    }
+
+    @Override
+    public ASTNode visitFunDecl(FunDecl fd) {
+        if (!fd.isPreDefined)
+            fd.block.accept(this);
+        return fd;
+    }
+
+    @Override
+    public ASTNode visitStructTypeDecl(StructTypeDecl st) { return st; }
+
+    @Override
+    public ASTNode visitVarDecl(VarDecl vd) { return vd; }
+
+    @Override
+    public ASTNode visitBaseType(BaseType bt) { return bt; }
+
+    @Override
+    public ASTNode visitStructType(StructType st) { return st; }
+
+    @Override
+    public ASTNode visitPointerType(PointerType pt) { return pt; }
+
+    @Override
+    public ASTNode visitArrayType(ArrayType at) { return at; }
+
+    @Override
+    public ASTNode visitOp(Op o) { return null; }
+}
@@ -0,0 +1,125 @@
+package opt;
+
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes the code which can never run:
+ *   * the functions main does not call, directly or through others (see CallGraph), when the program has a main,
+ *   * the statements of a block following one which never completes: a return, an if whose branches both return,
+ *     a block holding one, a while whose condition is a non-zero literal (there is no break),
+ *   * the branch of an if whose condition is a literal which is not taken, and the whiles whose condition is 0.
+ * An if with a literal condition is replaced by the branch taken, the statements of blocks are updated in place.
+ */
+public class DeadCodeEliminator {
+
+    public void removeDeadStatements(Program program) {
+        for (FunDecl fd : program.funDecls) {
+            if (!fd.isPreDefined)
+                eliminate(fd.block);
+        }
+    }
+
+    public void removeUnreachableFunctions(Program program) {
+        FunDecl main = null;
+        for (FunDecl fd : program.funDecls) {
+            if (!fd.isPreDefined && fd.name.equals("main"))
+                main = fd;
+        }
+        if (main == null)
+            return;
+
+        Set<FunDecl> reached = new CallGraph(program).reachableFrom(Collections.singleton(main));
+        reached.add(main);
+        program.funDecls.removeIf(fd -> !fd.isPreDefined && !reached.contains(fd));
+    }
+
+    // the value of an int or char literal, null otherwise
+    private static Integer valueOf(Expr expr) {
+        if (expr instanceof IntLiteral)
+            return ((IntLiteral) expr).value;
+        if (expr instanceof ChrLiteral)
+            return (int) ((ChrLiteral) expr).value;
+        return null;
+    }
+
+    private static Block empty() {
+        return new Block(new ArrayList<>(), new ArrayList<>());
+    }
+
+    // the statement without what cannot run in it, null when none of it can
+    private Stmt eliminate(Stmt stmt) {
+        if (stmt instanceof Block) {
+            List<Stmt> statements = ((Block) stmt).statements;
+            List<Stmt> live = new ArrayList<>(statements.size());
+            for (Stmt s : statements) {
+                Stmt left = eliminate(s);
+                if (left != null)
+                    live.add(left);
+                if (left != null && !completes(left))
+                    break;
+            }
+            if (live.size() != statements.size()) {
+                statements.clear();
+                statements.addAll(live);
+            } else {
+                for (int i = 0; i < live.size(); i++)
+                    statements.set(i, live.get(i));
+            }
+            return stmt;
+        }
+
+        if (stmt instanceof If) {
+            If i = (If) stmt;
+            Integer condition = valueOf(i.expression);
+            if (condition != null) {
+                Stmt taken = condition != 0 ? i.ifStatement : i.elseStatement;
+                return taken == null ? null : eliminate(taken);
+            }
+            Stmt ifStatement = eliminate(i.ifStatement);
+            Stmt elseStatement = i.elseStatement == null ? null : eliminate(i.elseStatement);
+            if (ifStatement == i.ifStatement && elseStatement == i.elseStatement)
+                return i;
+            return new If(i.expression, ifStatement == null ? empty() : ifStatement, elseStatement);
+        }
+
+        if (stmt instanceof While) {
+            While w = (While) stmt;
+            Integer condition = valueOf(w.expression);
+            if (condition != null && condition == 0)
+                return null;
+            Stmt statement = eliminate(w.statement);
+            if (statement == w.statement)
+                return w;
+            return new While(w.expression, statement == null ? empty() : statement);
+        }
+
+        return stmt;
+    }
+
+    // whether running the statement can go on to the next one, rather than return or loop forever
+    private static boolean completes(Stmt stmt) {
+        if (stmt instanceof Return)
+            return false;
+        if (stmt instanceof Block) {
+            for (Stmt s : ((Block) stmt).statements) {
+                if (!completes(s))
+                    return false;
+            }
+            return true;
+        }
+        if (stmt instanceof If) {
+            If i = (If) stmt;
+            return i.elseStatement == null || completes(i.ifStatement) || completes(i.elseStatement);
+        }
+        if (stmt instanceof While) {
+            Integer condition = valueOf(((While) stmt).expression);
+            return condition == null || condition == 0;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,313 @@
+package opt;
+
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces the calls of small leaf functions, which call nothing but the predefined functions, by a copy of their body
+ * (see InlinedCallExpr), saving the prologue, the storing of the arguments, the jal and the epilogue of each call.
+ * The functions are gone through callees first (see CallGraph): one whose calls have all been inlined becomes a leaf
+ * in turn, and may be inlined into its own callers. A recursive function calls itself, so is never a leaf.
+ * The size of a function is the number of statements and expressions of its body, those over the limit are not
+ * inlined, nor are those returning a struct (its value would be the address of a local of the copy).
+ * Calls are replaced in place, as are the statements of blocks, the functions are kept as they may still be called.
+ */
+public class Inliner implements ASTVisitor<ASTNode> {
+    public static final int DEFAULT_LIMIT = 40;
+
+    private final int limit;
+    private final Set<FunDecl> inlinable = new HashSet<>();
+
+    // while copying a body, its locals and parameters mapped to their copies (null when rewriting a function)
+    private Map<VarDecl, VarDecl> copies = null;
+
+    public Inliner(int limit) {
+        this.limit = limit;
+    }
+
+    public void inline(Program program) {
+        for (FunDecl fd : new CallGraph(program).calleesFirst()) {
+            fd.block.accept(this);
+            if (isInlinable(fd))
+                inlinable.add(fd);
+        }
+    }
+
+    private boolean isInlinable(FunDecl fd) {
+        boolean scalar = fd.type == BaseType.VOID || fd.type == BaseType.INT || fd.type == BaseType.CHAR
+                || fd.type instanceof PointerType;
+        return scalar && CallGraph.calledBy(fd.block).isEmpty() && size(fd.block) <= limit;
+    }
+
+    private boolean copying() {
+        return copies != null;
+    }
+
+    private Expr rewrite(Expr expr) {
+        return (Expr) expr.accept(this);
+    }
+
+    private Stmt rewrite(Stmt stmt) {
+        return stmt == null ? null : (Stmt) stmt.accept(this);
+    }
+
+    private static <E extends Expr> E typed(E expr, Type type) {
+        expr.type = type;
+        return expr;
+    }
+
+    // fresh declarations for the copy of a body, which its variables are then made to refer to
+    private List<VarDecl> fresh(List<VarDecl> varDecls) {
+        List<VarDecl> fresh = new ArrayList<>(varDecls.size());
+        for (VarDecl vd : varDecls) {
+            VarDecl copy = new VarDecl(vd.type, vd.varName);
+            copies.put(vd, copy);
+            fresh.add(copy);
+        }
+        return fresh;
+    }
+
+    private InlinedCallExpr inline(FunCallExpr fc) {
+        copies = new HashMap<>();
+        List<VarDecl> params = fresh(fc.fd.params);
+        Block block = (Block) fc.fd.block.accept(this);
+        copies = null;
+        return typed(new InlinedCallExpr(fc, params, block), fc.type);
+    }
+
+    // SIZE
+
+    private static int size(Stmt stmt) {
+        if (stmt instanceof Block) {
+            int size = 1;
+            for (Stmt s : ((Block) stmt).statements)
+                size += size(s);
+            return size;
+        }
+        if (stmt instanceof If) {
+            If i = (If) stmt;
+            return 1 + size(i.expression) + size(i.ifStatement) + (i.elseStatement == null ? 0 : size(i.elseStatement));
+        }
+        if (stmt instanceof While)
+            return 1 + size(((While) stmt).expression) + size(((While) stmt).statement);
+        if (stmt instanceof ExprStmt)
+            return 1 + size(((ExprStmt) stmt).expression);
+        if (stmt instanceof Assign)
+            return 1 + size(((Assign) stmt).lhs) + size(((Assign) stmt).rhs);
+        if (stmt instanceof Return && ((Return) stmt).expression != null)
+            return 1 + size(((Return) stmt).expression);
+        return 1;
+    }
+
+    private static int size(Expr expr) {
+        if (expr instanceof FunCallExpr) {
+            int size = 1;
+            for (Expr param : ((FunCallExpr) expr).params)
+                size += size(param);
+            return size;
+        }
+        if (expr instanceof InlinedCallExpr)
+            return size(((InlinedCallExpr) expr).call) + size(((InlinedCallExpr) expr).block);
+        if (expr instanceof BinOp)
+            return 1 + size(((BinOp) expr).lhs) + size(((BinOp) expr).rhs);
+        if (expr instanceof ArrayAccessExpr)
+            return 1 + size(((ArrayAccessExpr) expr).name) + size(((ArrayAccessExpr) expr).index);
+        if (expr instanceof FieldAccessExpr)
+            return 1 + size(((FieldAccessExpr) expr).name);
+        if (expr instanceof ValueAtExpr)
+            return 1 + size(((ValueAtExpr) expr).expression);
+        if (expr instanceof TypecastExpr)
+            return 1 + size(((TypecastExpr) expr).expression);
+        return 1;
+    }
+
+    // EXPRESSIONS, rebuilt when copying or when one of their operands has been rewritten
+
+    @Override
+    public ASTNode visitFunCallExpr(FunCallExpr fc) {
+        if (!copying()) {
+            List<Expr> params = fc.params;
+            for (int i = 0; i < params.size(); i++)
+                params.set(i, rewrite(params.get(i)));
+            return inlinable.contains(fc.fd) ? inline(fc) : fc;
+        }
+
+        List<Expr> params = new ArrayList<>(fc.params.size());
+        for (Expr param : fc.params)
+            params.add(rewrite(param));
+        FunCallExpr copy = new FunCallExpr(fc.name, params);
+        copy.fd = fc.fd;
+        return typed(copy, fc.type);
+    }
+
+    @Override
+    public ASTNode visitInlinedCallExpr(InlinedCallExpr ic) {
+        if (!copying())
+            return ic;
+        FunCallExpr call = (FunCallExpr) visitFunCallExpr(ic.call);
+        List<VarDecl> params = fresh(ic.params);
+        return typed(new InlinedCallExpr(call, params, (Block) ic.block.accept(this)), ic.type);
+    }
+
+    @Override
+    public ASTNode visitVarExpr(VarExpr v) {
+        if (!copying())
+            return v;
+        VarExpr copy = new VarExpr(v.name);
+        copy.vd = copies.getOrDefault(v.vd, v.vd); // globals are not copied
+        return typed(copy, v.type);
+    }
+
+    @Override
+    public ASTNode visitBinOp(BinOp bo) {
+        Expr lhs = rewrite(bo.lhs);
+        Expr rhs = rewrite(bo.rhs);
+        if (!copying() && lhs == bo.lhs && rhs == bo.rhs)
+            return bo;
+        return typed(new BinOp(lhs, bo.op, rhs), bo.type);
+    }
+
+    @Override
+    public ASTNode visitArrayAccessExpr(ArrayAccessExpr aa) {
+        Expr name = rewrite(aa.name);
+        Expr index = rewrite(aa.index);
+        if (!copying() && name == aa.name && index == aa.index)
+            return aa;
+        return typed(new ArrayAccessExpr(name, index), aa.type);
+    }
+
+    @Override
+    public ASTNode visitFieldAccessExpr(FieldAccessExpr fa) {
+        Expr name = rewrite(fa.name);
+        if (!copying() && name == fa.name)
+            return fa;
+        return typed(new FieldAccessExpr(name, fa.field), fa.type);
+    }
+
+    @Override
+    public ASTNode visitValueAtExpr(ValueAtExpr va) {
+        Expr expression = rewrite(va.expression);
+        if (!copying() && expression == va.expression)
+            return va;
+        return typed(new ValueAtExpr(expression), va.type);
+    }
+
+    @Override
+    public ASTNode visitTypecastExpr(TypecastExpr tc) {
+        Expr expression = rewrite(tc.expression);
+        if (!copying() && expression == tc.expression)
+            return tc;
+        return typed(new TypecastExpr(tc.castType, expression), tc.type);
+    }
+
+    @Override
+    public ASTNode visitSizeOfExpr(SizeOfExpr so) {
+        return copying() ? typed(new SizeOfExpr(so.sizeOfType), so.type) : so;
+    }
+
+    // a string literal is given a label of its own by the code generator, so is copied, the others may be shared
+    @Override
+    public ASTNode visitStrLiteral(StrLiteral sl) {
+        return copying() ? typed(new StrLiteral(sl.value), sl.type) : sl;
+    }
+
+    @Override
+    public ASTNode visitIntLiteral(IntLiteral il) { return il; }
+
+    @Override
+    public ASTNode visitChrLiteral(ChrLiteral cl) { return cl; }
+
+    // STATEMENTS
+
+    @Override
+    public ASTNode visitBlock(Block b) {
+        if (!copying()) {
+            List<Stmt> statements = b.statements;
+            for (int i = 0; i < statements.size(); i++)
+                statements.set(i, rewrite(statements.get(i)));
+            return b;
+        }
+
+        List<VarDecl> variables = fresh(b.variables);
+        List<Stmt> statements = new ArrayList<>(b.statements.size());
+        for (Stmt stmt : b.statements)
+            statements.add(rewrite(stmt));
+        return new Block(variables, statements);
+    }
+
+    @Override
+    public ASTNode visitExprStmt(ExprStmt es) {
+        Expr expression = rewrite(es.expression);
+        return !copying() && expression == es.expression ? es : new ExprStmt(expression);
+    }
+
+    @Override
+    public ASTNode visitWhile(While w) {
+        Expr expression = rewrite(w.expression);
+        Stmt statement = rewrite(w.statement);
+        return !copying() && expression == w.expression && statement == w.statement ? w : new While(expression, statement);
+    }
+
+    @Override
+    public ASTNode visitIf(If i) {
+        Expr expression = rewrite(i.expression);
+        Stmt ifStatement = rewrite(i.ifStatement);
+        Stmt elseStatement = rewrite(i.elseStatement);
+        if (!copying() && expression == i.expression && ifStatement == i.ifStatement && elseStatement == i.elseStatement)
+            return i;
+        return new If(expression, ifStatement, elseStatement);
+    }
+
+    @Override
+    public ASTNode visitAssign(Assign a) {
+        Expr lhs = rewrite(a.lhs);
+        Expr rhs = rewrite(a.rhs);
+        return !copying() && lhs == a.lhs && rhs == a.rhs ? a : new Assign(lhs, rhs);
+    }
+
+    @Override
+    public ASTNode visitReturn(Return r) {
+        if (r.expression == null)
+            return copying() ? new Return() : r;
+        Expr expression = rewrite(r.expression);
+        return !copying() && expression == r.expression ? r : new Return(expression);
+    }
+
+    // DECLARATIONS AND TYPES, left as they are
+
+    @Override
+    public ASTNode visitProgram(Program p) {
+        inline(p);
+        return p;
+    }
+
+    @Override
+    public ASTNode visitFunDecl(FunDecl fd) { return fd; }
+
+    @Override
+    public ASTNode visitStructTypeDecl(StructTypeDecl st) { return st; }
+
+    @Override
+    public ASTNode visitVarDecl(VarDecl vd) { return vd; }
+
+    @Override
+    public ASTNode visitBaseType(BaseType bt) { return bt; }
+
+    @Override
+    public ASTNode visitStructType(StructType st) { return st; }
+
+    @Override
+    public ASTNode visitPointerType(PointerType pt) { return pt; }
+
+    @Override
+    public ASTNode visitArrayType(ArrayType at) { return at; }
+
+    @Override
+    public ASTNode visitOp(Op o) { return null; }
+}
@@ -0,0 +1,39 @@
+package opt;
+
+import ast.Program;
+import gen.Optimization;
+
+import java.util.Set;
+
+/**
+ * Runs the optimizations made on the AST, between the semantic analysis and the code generation.
+ */
+public class Optimizer {
+    private final Set<Optimization> optimizations;
+    private final int inlineLimit; // size of the largest function inlined, see Inliner
+
+    public Optimizer(Set<Optimization> optimizations) {
+        this(optimizations, Inliner.DEFAULT_LIMIT);
+    }
+
+    public Optimizer(Set<Optimization> optimizations, int inlineLimit) {
+        this.optimizations = optimizations;
+        this.inlineLimit = inlineLimit;
+    }
+
+    // rewrites the program, which must have passed the semantic analysis
+    public void optimize(Program program) {
+        if (optimizations.contains(Optimization.FOLD))
+            new ConstantFolder().fold(program);
+        // after folding, the conditions of the branches left are those which are not literals
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        if (optimizations.contains(Optimization.DEAD_CODE))
+            eliminator.removeDeadStatements(program);
+        // after folding, the bodies copied are those folded
+        if (optimizations.contains(Optimization.INLINE))
+            new Inliner(inlineLimit).inline(program);
+        // after inlining, the functions only called from where they have been inlined are no longer called at all
+        if (optimizations.contains(Optimization.DEAD_CODE))
+            eliminator.removeUnreachableFunctions(program);
+    }
+}
@@ -0,0 +1,52 @@
+package parser;
+
+import lexer.Token.TokenClass;
+import lexer.TokenBuffer;
+
+/**
+ * Cursor over a packed TokenBuffer, every access (including look ahead) is an array read.
+ */
+class PackedCursor implements TokenCursor {
+
+    private final TokenBuffer tokens;
+    private int index = -1;
+
+    PackedCursor(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public void next() {
+        index++;
+    }
+
+    @Override
+    public TokenClass tokenClass() {
+        return tokens.tokenClass(index);
+    }
+
+    @Override
+    public String data() {
+        return tokens.data(index);
+    }
+
+    @Override
+    public TokenClass lookAhead(int i) {
+        return tokens.tokenClass(index + i);
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public String describe() {
+        return tokens.toString(index);
+    }
+
+    @Override
+    public String position() {
+        return tokens.line(index) + ":" + tokens.column(index);
+    }
+}
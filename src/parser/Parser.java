@@ -2,16 +2,13 @@ package parser;
 
 import ast.*;
 
-import lexer.Token;
+import lexer.TokenBuffer;
 import lexer.Tokeniser;
 import lexer.Token.TokenClass;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * @author sfilipiak
@@ -19,16 +16,43 @@ import java.util.stream.Stream;
 
 public class Parser {
 
-    private Token token;
+    // token classes accepted together, kept as constants so that accept and expect do not allocate a varargs array per call
+    private static final TokenClass[] TYPES = {TokenClass.INT, TokenClass.CHAR, TokenClass.VOID};
+    private static final TokenClass[] TYPES_AND_STRUCT = {TokenClass.INT, TokenClass.CHAR, TokenClass.VOID, TokenClass.STRUCT};
+    private static final TokenClass[] STATEMENT_FIRST = {TokenClass.LBRA, TokenClass.WHILE, TokenClass.IF, TokenClass.RETURN, TokenClass.LPAR, TokenClass.MINUS, TokenClass.ASTERIX, TokenClass.SIZEOF, TokenClass.IDENTIFIER, TokenClass.INT_LITERAL, TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL};
+    private static final TokenClass[] EXP_FIRST = {TokenClass.LPAR, TokenClass.MINUS, TokenClass.ASTERIX, TokenClass.SIZEOF, TokenClass.IDENTIFIER, TokenClass.INT_LITERAL, TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL};
+    private static final TokenClass[] LITERALS = {TokenClass.INT_LITERAL, TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL};
+    private static final TokenClass[] VAR_DECL_END = {TokenClass.SC, TokenClass.LSBR};
+    private static final TokenClass[] ASSIGN_OR_SC = {TokenClass.ASSIGN, TokenClass.SC};
+    private static final TokenClass[] EQUALITY_OPS = {TokenClass.EQ, TokenClass.NE};
+    private static final TokenClass[] RELATIONAL_OPS = {TokenClass.GT, TokenClass.LT, TokenClass.GE, TokenClass.LE};
+    private static final TokenClass[] ADDITIVE_OPS = {TokenClass.PLUS, TokenClass.MINUS};
+    private static final TokenClass[] MULTIPLICATIVE_OPS = {TokenClass.ASTERIX, TokenClass.DIV, TokenClass.REM};
+    private static final TokenClass[] POSTFIX_OPS = {TokenClass.DOT, TokenClass.LSBR};
+
+    // the token stream, either pulled from a Tokeniser or read from a packed TokenBuffer
+    private final TokenCursor tokens;
+
+    // where parsing errors are reported
+    private final PrintStream out;
 
-    // use for backtracking (useful for distinguishing decls from procs when parsing a program for instance)
-    private Queue<Token> buffer = new LinkedList<>();
+    public Parser(Tokeniser tokeniser) {
+        this(tokeniser, System.out);
+    }
 
-    private final Tokeniser tokeniser;
+    public Parser(Tokeniser tokeniser, PrintStream out) {
+        this.tokens = new StreamCursor(tokeniser);
+        this.out = out;
+    }
 
+    // parses a token stream lexed up front by Tokeniser.tokenise(), the same buffer can be parsed any number of times
+    public Parser(TokenBuffer tokenBuffer) {
+        this(tokenBuffer, System.out);
+    }
 
-    public Parser(Tokeniser tokeniser) {
-        this.tokeniser = tokeniser;
+    public Parser(TokenBuffer tokenBuffer, PrintStream out) {
+        this.tokens = new PackedCursor(tokenBuffer);
+        this.out = out;
     }
 
     public Program parse() {
@@ -43,11 +67,11 @@ public class Parser {
     }
 
     private int error = 0;
-    private Token lastErrorToken;
+    private int lastErrorToken = -1;
 
     private void error(TokenClass... expected) {
 
-        if (lastErrorToken == token) {
+        if (lastErrorToken == tokens.index()) {
             // skip this error, same token causing trouble
             return;
         }
@@ -59,54 +83,51 @@ public class Parser {
             sb.append(e);
             sep = "|";
         }
-        System.out.println("Parsing error: expected (" + sb + ") found (" + token + ") at " + token.position);
+        out.println("Parsing error: expected (" + sb + ") found (" + tokens.describe() + ") at " + tokens.position());
 
         error++;
-        lastErrorToken = token;
+        lastErrorToken = tokens.index();
     }
 
     /*
-     * Look ahead the i^th element from the stream of token.
-     * i should be >= 1
+     * Look ahead the class of the i^th element from the stream of token.
+     * i should be >= 1 and at most TokenCursor.MAX_LOOK_AHEAD
      */
-    private Token lookAhead(int i) {
-        // ensures the buffer has the element we want to look ahead
-        while (buffer.size() < i)
-            buffer.add(tokeniser.nextToken());
-        assert buffer.size() >= i;
-
-        int cnt = 1;
-        for (Token t : buffer) {
-            if (cnt == i)
-                return t;
-            cnt++;
-        }
-
-        assert false; // should never reach this
-        return null;
+    private TokenClass lookAhead(int i) {
+        return tokens.lookAhead(i);
     }
 
 
     /*
-     * Consumes the next token from the tokeniser or the buffer if not empty.
+     * Consumes the next token from the token stream.
      */
     private void nextToken() {
-        if (!buffer.isEmpty())
-            token = buffer.remove();
-        else
-            token = tokeniser.nextToken();
+        tokens.next();
     }
 
     /*
      * If the current token is equals to the expected one, then skip it, otherwise report an error.
-     * Returns the expected token or null if an error occurred.
+     * Returns the class of the expected token or null if an error occurred.
+     */
+    private TokenClass expect(TokenClass expected) {
+        if (expected == tokens.tokenClass()) {
+            nextToken();
+            return expected;
+        }
+
+        nextToken();
+        error(expected);
+        return null;
+    }
+
+    /*
+     * Same as expect, but for any of the expected ones.
      */
-    private Token expect(TokenClass... expected) {
+    private TokenClass expect(TokenClass... expected) {
         for (TokenClass e : expected) {
-            if (e == token.tokenClass) {
-                Token cur = token;
+            if (e == tokens.tokenClass()) {
                 nextToken();
-                return cur;
+                return e;
             }
         }
 
@@ -115,14 +136,38 @@ public class Parser {
         return null;
     }
 
+    /*
+     * Same as expect, but returns the data of the expected token or null if an error occurred.
+     */
+    private String expectData(TokenClass expected) {
+        if (expected == tokens.tokenClass()) {
+            String data = tokens.data();
+            nextToken();
+            return data;
+        }
+
+        nextToken();
+        error(expected);
+        return null;
+    }
+
+    /*
+     * Returns true if the current token is equals to the expected one.
+     */
+    private boolean accept(TokenClass expected) {
+        return expected == tokens.tokenClass();
+    }
+
     /*
      * Returns true if the current token is equals to any of the expected ones.
      */
     private boolean accept(TokenClass... expected) {
-        boolean result = false;
-        for (TokenClass e : expected)
-            result |= (e == token.tokenClass);
-        return result;
+        TokenClass current = tokens.tokenClass();
+        for (TokenClass e : expected) {
+            if (e == current)
+                return true;
+        }
+        return false;
     }
 
 
@@ -139,19 +184,17 @@ public class Parser {
 
     // includes are ignored, so does not need to return an AST node
     private void parseIncludes() {
-        if (accept(TokenClass.INCLUDE)) {
+        while (accept(TokenClass.INCLUDE)) {
             nextToken();
             expect(TokenClass.STRING_LITERAL);
-            parseIncludes();
         }
     }
 
     private List<StructTypeDecl> parseStructDecls() {
-        if (accept(TokenClass.STRUCT) && lookAhead(2).tokenClass.equals(TokenClass.LBRA)) {
-            List<StructTypeDecl> structTypeDecls = new ArrayList<>();
-
+        List<StructTypeDecl> structTypeDecls = new ArrayList<>();
+        while (accept(TokenClass.STRUCT) && lookAhead(2).equals(TokenClass.LBRA)) {
             nextToken();
-            String name = token.data;
+            String name = tokens.data();
             expect(TokenClass.IDENTIFIER);
             expect(TokenClass.LBRA);
             List<VarDecl> structVarDecls = parseStructVarDecls();
@@ -159,66 +202,50 @@ public class Parser {
             expect(TokenClass.SC);
 
             structTypeDecls.add(new StructTypeDecl(new StructType(name), structVarDecls));
-            List<StructTypeDecl> parseStructDecls = parseStructDecls();
-            if (!parseStructDecls.isEmpty()) {
-                structTypeDecls = Stream.concat(structTypeDecls.stream(), parseStructDecls.stream()).collect(Collectors.toList());
-            }
-            return structTypeDecls;
         }
-        return new ArrayList<>();
+        return structTypeDecls;
     }
 
     private List<VarDecl> parseStructVarDecls() {
-        if (accept(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID, TokenClass.STRUCT)) {
+        if (accept(TYPES_AND_STRUCT)) {
             return parseVarDecls();
         } else {
-            expect(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID, TokenClass.STRUCT);
+            expect(TYPES_AND_STRUCT);
             return null;
         }
     }
 
     private List<VarDecl> parseVarDecls() {
-        if ((accept(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID) && !lookAhead(2).tokenClass.equals(TokenClass.LPAR)) || (accept(TokenClass.STRUCT) && !lookAhead(3).tokenClass.equals(TokenClass.LPAR))) {
-            List<VarDecl> varDecls = new ArrayList<>();
-
+        List<VarDecl> varDecls = new ArrayList<>();
+        while ((accept(TYPES) && !lookAhead(2).equals(TokenClass.LPAR)) || (accept(TokenClass.STRUCT) && !lookAhead(3).equals(TokenClass.LPAR))) {
             Type type = parseType();
-            String name = null;
-            Token identifier = expect(TokenClass.IDENTIFIER);
-            if (identifier != null)
-                name = identifier.data;
-
-            if (accept(TokenClass.SC, TokenClass.LSBR)) {
-                Token varDeclToken = expect(TokenClass.SC, TokenClass.LSBR);
-                if (varDeclToken != null && varDeclToken.tokenClass.equals(TokenClass.LSBR)) {
-                    Token arraySizeToken = expect(TokenClass.INT_LITERAL);
-                    if (arraySizeToken != null)
-                        type = new ArrayType(type, Integer.parseInt(arraySizeToken.data));
+            String name = expectData(TokenClass.IDENTIFIER);
+
+            if (accept(VAR_DECL_END)) {
+                TokenClass varDeclToken = expect(VAR_DECL_END);
+                if (varDeclToken == TokenClass.LSBR) {
+                    String arraySize = expectData(TokenClass.INT_LITERAL);
+                    if (arraySize != null)
+                        type = new ArrayType(type, Integer.parseInt(arraySize));
                     expect(TokenClass.RSBR);
                     expect(TokenClass.SC);
                 }
 
                 VarDecl variable = new VarDecl(type, name);
                 varDecls.add(variable);
-                List<VarDecl> parseVarDecls = parseVarDecls();
-                if (parseVarDecls != null) {
-                    varDecls = Stream.concat(varDecls.stream(), parseVarDecls.stream()).collect(Collectors.toList());
-                }
-                return varDecls;
-            } else
-                expect(TokenClass.SC, TokenClass.LSBR);
+            } else {
+                expect(VAR_DECL_END);
+                break;
+            }
         }
-        return new ArrayList<>();
+        return varDecls;
     }
 
     private List<FunDecl> parseFunDecls() {
-        if ((accept(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID) && lookAhead(2).tokenClass.equals(TokenClass.LPAR)) || (accept(TokenClass.STRUCT) && lookAhead(3).tokenClass.equals(TokenClass.LPAR))) {
-            List<FunDecl> funDecls = new ArrayList<>();
-
+        List<FunDecl> funDecls = new ArrayList<>();
+        while ((accept(TYPES) && lookAhead(2).equals(TokenClass.LPAR)) || (accept(TokenClass.STRUCT) && lookAhead(3).equals(TokenClass.LPAR))) {
             Type type = parseType();
-            String name = null;
-            Token identifier = expect(TokenClass.IDENTIFIER);
-            if (identifier != null)
-                name = identifier.data;
+            String name = expectData(TokenClass.IDENTIFIER);
 
             if (accept(TokenClass.LPAR)) {
                 nextToken();
@@ -228,15 +255,12 @@ public class Parser {
 
                 FunDecl function = new FunDecl(type, name, params, block);
                 funDecls.add(function);
-                List<FunDecl> parseFunDecls = parseFunDecls();
-                if (parseFunDecls != null) {
-                    funDecls = Stream.concat(funDecls.stream(), parseFunDecls.stream()).collect(Collectors.toList());
-                }
-                return funDecls;
-            } else
+            } else {
                 expect(TokenClass.LPAR);
+                break;
+            }
         }
-        return new ArrayList<>();
+        return funDecls;
     }
 
     private Type parseType() {
@@ -244,7 +268,7 @@ public class Parser {
         if (accept(TokenClass.STRUCT)) {
             type = parseStructType();
         } else {
-            switch (token.tokenClass) {
+            switch (tokens.tokenClass()) {
                 case INT:
                     type = BaseType.INT;
                     nextToken();
@@ -258,7 +282,7 @@ public class Parser {
                     nextToken();
                     break;
                 default:
-                    expect(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID);
+                    expect(TYPES);
                     break;
             }
         }
@@ -274,7 +298,7 @@ public class Parser {
         Type type;
         expect(TokenClass.STRUCT);
         if (accept(TokenClass.IDENTIFIER))
-            type = new StructType(token.data);
+            type = new StructType(tokens.data());
         else
             type = new StructType(null);
         expect(TokenClass.IDENTIFIER);
@@ -282,53 +306,25 @@ public class Parser {
     }
 
     private List<VarDecl> parseParamsList() {
-        if (!accept(TokenClass.RPAR)) {
-            List<VarDecl> params = new ArrayList<>();
-
-            Type type = parseType();
-            String name = null;
-            Token identifier = expect(TokenClass.IDENTIFIER);
-            if (identifier != null)
-                name = identifier.data;
-            VarDecl param = new VarDecl(type, name);
-
-            params.add(param);
-            List<VarDecl> paramsRepetitions = parseParamsRepetitions();
-            if (!paramsRepetitions.isEmpty()) {
-                params = Stream.concat(params.stream(), paramsRepetitions.stream()).collect(Collectors.toList());
-            }
-            return params;
-        }
-        return new ArrayList<>();
-    }
-
-    private List<VarDecl> parseParamsRepetitions() {
-        if (!accept(TokenClass.RPAR)) {
-            List<VarDecl> params = new ArrayList<>();
-
-            expect(TokenClass.COMMA);
+        List<VarDecl> params = new ArrayList<>();
+        // stops at EOF as well, the missing RPAR is then reported by the caller
+        while (!accept(TokenClass.RPAR) && !accept(TokenClass.EOF)) {
+            if (!params.isEmpty())
+                expect(TokenClass.COMMA);
 
             Type type = parseType();
-            String name = null;
-            Token identifier = expect(TokenClass.IDENTIFIER);
-            if (identifier != null)
-                name = identifier.data;
+            String name = expectData(TokenClass.IDENTIFIER);
             VarDecl param = new VarDecl(type, name);
 
             params.add(param);
-            List<VarDecl> paramsRepetitions = parseParamsRepetitions();
-            if (!paramsRepetitions.isEmpty()) {
-                params = Stream.concat(params.stream(), paramsRepetitions.stream()).collect(Collectors.toList());
-            }
-            return params;
         }
-        return new ArrayList<>();
+        return params;
     }
 
     private List<Stmt> parseStatement() {
-        if (accept(TokenClass.LBRA, TokenClass.WHILE, TokenClass.IF, TokenClass.RETURN, TokenClass.LPAR, TokenClass.MINUS, TokenClass.ASTERIX, TokenClass.SIZEOF, TokenClass.IDENTIFIER, TokenClass.INT_LITERAL, TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL)) {
-            List<Stmt> statements = new ArrayList<>();
-            switch (token.tokenClass) {
+        List<Stmt> statements = new ArrayList<>();
+        while (accept(STATEMENT_FIRST)) {
+            switch (tokens.tokenClass()) {
                 case LBRA: {
                     statements.add(parseBlock());
                     break;
@@ -377,8 +373,8 @@ public class Parser {
                 case CHAR_LITERAL:
                 case STRING_LITERAL: {
                     Expr expression = parseExpression();
-                    Token statementToken = expect(TokenClass.ASSIGN, TokenClass.SC);
-                    if (statementToken != null && statementToken.tokenClass.equals(TokenClass.ASSIGN)) {
+                    TokenClass statementToken = expect(ASSIGN_OR_SC);
+                    if (statementToken == TokenClass.ASSIGN) {
                         Expr assignExpression = parseExpression();
                         expect(TokenClass.SC);
                         statements.add(new Assign(expression, assignExpression));
@@ -392,18 +388,13 @@ public class Parser {
                     expect(TokenClass.INVALID);
                     break;
             }
-            List<Stmt> parseStatement = parseStatement();
-            if (!parseStatement.isEmpty()) {
-                statements = Stream.concat(statements.stream(), parseStatement.stream()).collect(Collectors.toList());
-            }
-            return statements;
         }
-        return new ArrayList<>();
+        return statements;
     }
 
     private Stmt parseStatementOnly() {
-        if (accept(TokenClass.LBRA, TokenClass.WHILE, TokenClass.IF, TokenClass.RETURN, TokenClass.LPAR, TokenClass.MINUS, TokenClass.ASTERIX, TokenClass.SIZEOF, TokenClass.IDENTIFIER, TokenClass.INT_LITERAL, TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL)) {
-            switch (token.tokenClass) {
+        if (accept(STATEMENT_FIRST)) {
+            switch (tokens.tokenClass()) {
                 case LBRA: {
                     return parseBlock();
                 }
@@ -448,8 +439,8 @@ public class Parser {
                 case CHAR_LITERAL:
                 case STRING_LITERAL: {
                     Expr expression = parseExpression();
-                    Token statementToken = expect(TokenClass.ASSIGN, TokenClass.SC);
-                    if (statementToken != null && statementToken.tokenClass.equals(TokenClass.ASSIGN)) {
+                    TokenClass statementToken = expect(ASSIGN_OR_SC);
+                    if (statementToken == TokenClass.ASSIGN) {
                         Expr assignExpression = parseExpression();
                         expect(TokenClass.SC);
                         return new Assign(expression, assignExpression);
@@ -462,7 +453,7 @@ public class Parser {
                     break;
             }
         } else {
-            expect(TokenClass.LBRA, TokenClass.WHILE, TokenClass.IF, TokenClass.RETURN, TokenClass.LPAR, TokenClass.MINUS, TokenClass.ASTERIX, TokenClass.SIZEOF, TokenClass.IDENTIFIER, TokenClass.INT_LITERAL, TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL);
+            expect(STATEMENT_FIRST);
         }
         return null;
     }
@@ -476,10 +467,10 @@ public class Parser {
     }
 
     private Expr parseExpression() {
-        if (accept(TokenClass.LPAR, TokenClass.MINUS, TokenClass.ASTERIX, TokenClass.SIZEOF, TokenClass.IDENTIFIER, TokenClass.INT_LITERAL, TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL)) {
+        if (accept(EXP_FIRST)) {
             return parseExpression_8();
         } else {
-            expect(TokenClass.LPAR, TokenClass.MINUS, TokenClass.ASTERIX, TokenClass.SIZEOF, TokenClass.IDENTIFIER, TokenClass.INT_LITERAL, TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL);
+            expect(EXP_FIRST);
         }
         return null;
     }
@@ -508,9 +499,9 @@ public class Parser {
 
     private Expr parseExpression_6() {
         Expr lhs = parseExpression_5();
-        while (accept(TokenClass.EQ, TokenClass.NE)) {
+        while (accept(EQUALITY_OPS)) {
             Op op;
-            switch (token.tokenClass) {
+            switch (tokens.tokenClass()) {
                 case EQ: {
                     op = Op.EQ;
                     break;
@@ -531,9 +522,9 @@ public class Parser {
 
     private Expr parseExpression_5() {
         Expr lhs = parseExpression_4();
-        while (accept(TokenClass.GT, TokenClass.LT, TokenClass.GE, TokenClass.LE)) {
+        while (accept(RELATIONAL_OPS)) {
             Op op;
-            switch (token.tokenClass) {
+            switch (tokens.tokenClass()) {
                 case GT: {
                     op = Op.GT;
                     break;
@@ -562,9 +553,9 @@ public class Parser {
 
     private Expr parseExpression_4() {
         Expr lhs = parseExpression_3();
-        while (accept(TokenClass.PLUS, TokenClass.MINUS)) {
+        while (accept(ADDITIVE_OPS)) {
             Op op;
-            switch (token.tokenClass) {
+            switch (tokens.tokenClass()) {
                 case PLUS: {
                     op = Op.ADD;
                     break;
@@ -585,9 +576,9 @@ public class Parser {
 
     private Expr parseExpression_3() {
         Expr lhs = parseExpression_2();
-        while (accept(TokenClass.ASTERIX, TokenClass.DIV, TokenClass.REM)) {
+        while (accept(MULTIPLICATIVE_OPS)) {
             Op op;
-            switch (token.tokenClass) {
+            switch (tokens.tokenClass()) {
                 case ASTERIX: {
                     op = Op.MUL;
                     break;
@@ -616,7 +607,7 @@ public class Parser {
         } else if (accept(TokenClass.ASTERIX)) {
             return parseValueAt();
         } else if (accept(TokenClass.LPAR)) {
-            if (lookAhead(1).tokenClass.equals(TokenClass.INT) || lookAhead(1).tokenClass.equals(TokenClass.VOID) || lookAhead(1).tokenClass.equals(TokenClass.CHAR) || lookAhead(1).tokenClass.equals(TokenClass.STRUCT))
+            if (lookAhead(1).equals(TokenClass.INT) || lookAhead(1).equals(TokenClass.VOID) || lookAhead(1).equals(TokenClass.CHAR) || lookAhead(1).equals(TokenClass.STRUCT))
                 return parseTypeCast();
             else
                 return parseExpression_1();
@@ -631,7 +622,7 @@ public class Parser {
     private Expr parseExpression_1() {
         Expr lhs = parseExpression_0();
 
-        while (accept(TokenClass.DOT, TokenClass.LSBR)) {
+        while (accept(POSTFIX_OPS)) {
             if (accept(TokenClass.DOT)) {
                 lhs = parseFieldAccess(lhs);
             } else if (accept(TokenClass.LSBR)) {
@@ -642,7 +633,7 @@ public class Parser {
     }
 
     private Expr parseExpression_0() {
-        String tokenData = token.data;
+        String tokenData = tokens.data();
 
         if (accept(TokenClass.LPAR)) {
             expect(TokenClass.LPAR);
@@ -650,7 +641,7 @@ public class Parser {
             expect(TokenClass.RPAR);
             return expression;
         } else if (accept(TokenClass.IDENTIFIER)) {
-            if (lookAhead(1).tokenClass.equals(TokenClass.LPAR))
+            if (lookAhead(1).equals(TokenClass.LPAR))
                 return parseFuncCall();
             expect(TokenClass.IDENTIFIER);
             return new VarExpr(tokenData);
@@ -670,16 +661,13 @@ public class Parser {
         }
 
         // It should never reach here
-        expect(TokenClass.INT_LITERAL, TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL);
+        expect(LITERALS);
         // return dummy StrLiteral
         return new StrLiteral("");
     }
 
     private FunCallExpr parseFuncCall() {
-        String name = null;
-        Token function = expect(TokenClass.IDENTIFIER);
-        if (function != null)
-            name = function.data;
+        String name = expectData(TokenClass.IDENTIFIER);
         expect(TokenClass.LPAR);
         List<Expr> params = parseFuncCallParamsList();
         expect(TokenClass.RPAR);
@@ -687,36 +675,17 @@ public class Parser {
     }
 
     private List<Expr> parseFuncCallParamsList() {
-        if (!accept(TokenClass.RPAR)) {
-            List<Expr> params = new ArrayList<>();
-
-            Expr expression = parseExpression();
-
-            params.add(expression);
-            List<Expr> paramsRepetitions = parseFuncCallParamsRepetitions();
-            if (!paramsRepetitions.isEmpty()) {
-                params = Stream.concat(params.stream(), paramsRepetitions.stream()).collect(Collectors.toList());
-            }
-            return params;
-        }
-        return new ArrayList<>();
-    }
-
-    private List<Expr> parseFuncCallParamsRepetitions() {
-        if (!accept(TokenClass.RPAR)) {
-            List<Expr> params = new ArrayList<>();
-            expect(TokenClass.COMMA);
+        List<Expr> params = new ArrayList<>();
+        // stops at EOF as well, the missing RPAR is then reported by the caller
+        while (!accept(TokenClass.RPAR) && !accept(TokenClass.EOF)) {
+            if (!params.isEmpty())
+                expect(TokenClass.COMMA);
 
             Expr expression = parseExpression();
 
             params.add(expression);
-            List<Expr> paramsRepetitions = parseFuncCallParamsRepetitions();
-            if (!paramsRepetitions.isEmpty()) {
-                params = Stream.concat(params.stream(), paramsRepetitions.stream()).collect(Collectors.toList());
-            }
-            return params;
         }
-        return new ArrayList<>();
+        return params;
     }
 
     private ArrayAccessExpr parseArrayAccess(Expr inputExpression) {
@@ -727,11 +696,8 @@ public class Parser {
     }
 
     private FieldAccessExpr parseFieldAccess(Expr inputExpression) {
-        String fieldName = null;
         expect(TokenClass.DOT);
-        Token field = expect(TokenClass.IDENTIFIER);
-        if (field != null)
-            fieldName = field.data;
+        String fieldName = expectData(TokenClass.IDENTIFIER);
         return new FieldAccessExpr(inputExpression, fieldName);
     }
 
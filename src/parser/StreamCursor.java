@@ -0,0 +1,83 @@
+package parser;
+
+import lexer.Token;
+import lexer.Token.TokenClass;
+import lexer.Tokeniser;
+
+/**
+ * Cursor pulling tokens from a Tokeniser one at a time.
+ * Looked ahead tokens are kept in a fixed size ring buffer, so at most MAX_LOOK_AHEAD tokens can be looked ahead.
+ */
+class StreamCursor implements TokenCursor {
+
+    // a power of two no smaller than MAX_LOOK_AHEAD, so that positions wrap with a mask
+    private static final int CAPACITY = 4;
+    private static final int MASK = CAPACITY - 1;
+
+    private final Tokeniser tokeniser;
+    private Token token;
+    private int index = -1;
+
+    // use for backtracking (useful for distinguishing decls from procs when parsing a program for instance)
+    private final Token[] buffer = new Token[CAPACITY];
+    private int head = 0;
+    private int buffered = 0;
+
+    StreamCursor(Tokeniser tokeniser) {
+        this.tokeniser = tokeniser;
+    }
+
+    /*
+     * Consumes the next token from the tokeniser or the buffer if not empty.
+     */
+    @Override
+    public void next() {
+        if (buffered > 0) {
+            token = buffer[head];
+            buffer[head] = null;
+            head = (head + 1) & MASK;
+            buffered--;
+        } else {
+            token = tokeniser.nextToken();
+        }
+        index++;
+    }
+
+    @Override
+    public TokenClass tokenClass() {
+        return token.tokenClass;
+    }
+
+    @Override
+    public String data() {
+        return token.data;
+    }
+
+    @Override
+    public TokenClass lookAhead(int i) {
+        if (i < 1 || i > MAX_LOOK_AHEAD)
+            throw new IllegalArgumentException("can only look ahead 1 to " + MAX_LOOK_AHEAD + " tokens, not " + i);
+
+        // ensures the buffer has the element we want to look ahead
+        while (buffered < i) {
+            buffer[(head + buffered) & MASK] = tokeniser.nextToken();
+            buffered++;
+        }
+        return buffer[(head + i - 1) & MASK].tokenClass;
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public String describe() {
+        return token.toString();
+    }
+
+    @Override
+    public String position() {
+        return token.position.toString();
+    }
+}
@@ -0,0 +1,31 @@
+package parser;
+
+import lexer.Token.TokenClass;
+
+/**
+ * The current position of the Parser in its token stream.
+ * Before the first call to next() there is no current token.
+ */
+interface TokenCursor {
+
+    // the grammar needs to look at most 3 tokens ahead (struct declarations: STRUCT IDENTIFIER IDENTIFIER LPAR)
+    int MAX_LOOK_AHEAD = 3;
+
+    // consumes the current token, the following one becomes current
+    void next();
+
+    TokenClass tokenClass();
+
+    String data();
+
+    // class of the i^th token after the current one, 1 <= i <= MAX_LOOK_AHEAD
+    TokenClass lookAhead(int i);
+
+    // identifies the current token, increases with every call to next()
+    int index();
+
+    // the current token as printed by Token.toString()
+    String describe();
+
+    String position();
+}
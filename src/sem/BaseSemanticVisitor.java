@@ -2,6 +2,8 @@ package sem;
 
 import ast.*;
 
+import java.io.PrintStream;
+
 /**
  * 
  * @author sfilipiak
@@ -9,10 +11,17 @@ import ast.*;
  */
 public abstract class BaseSemanticVisitor<T> implements SemanticVisitor<T> {
 	private int errors;
+	private final PrintStream err;
 	
 	
 	public BaseSemanticVisitor() {
+		this(System.err);
+	}
+
+	// reports errors to err instead of System.err
+	public BaseSemanticVisitor(PrintStream err) {
 		errors = 0;
+		this.err = err;
 	}
 	
 	public int getErrorCount() {
@@ -20,12 +29,12 @@ public abstract class BaseSemanticVisitor<T> implements SemanticVisitor<T> {
 	}
 	
 	protected void error(String message) {
-		System.err.println("semantic error: " + message);
+		err.println("semantic error: " + message);
 		errors++;
 	}
 
 	protected void error(String formatString, Object... params) {
-		System.err.printf(formatString + "\n", params);
+		err.printf(formatString + "\n", params);
 		errors++;
 	}
 
@@ -2,6 +2,7 @@ package sem;
 
 import ast.*;
 
+import java.io.PrintStream;
 import java.util.*;
 
 public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
@@ -9,6 +10,11 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
     public Scope scope;
 
     public NameAnalysisVisitor() {
+        this(System.err);
+    }
+
+    public NameAnalysisVisitor(PrintStream err) {
+        super(err);
         this.scope = new Scope();
 
         addPredefinedFunctions();
@@ -308,4 +314,10 @@ public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
         return null;
     }
 
+    // only made by opt.Inliner, once the names are resolved
+    @Override
+    public Void visitInlinedCallExpr(InlinedCallExpr ic) {
+        return null;
+    }
+
 }
@@ -20,17 +20,12 @@ public class Scope {
         this.structSymbolTable = new HashMap<>();
     }
 
+    // names come from the Tokeniser's NameTable, so the HashMaps find them by identity with cached hash codes
     public Symbol lookup(String name, boolean isStructSymbol) {
-        if (isStructSymbol) {
-            if (structSymbolTable.get(name) != null)
-                return structSymbolTable.get(name);
-            if (outer != null)
-                return outer.lookup(name, true);
-        } else {
-            if (symbolTable.get(name) != null)
-                return symbolTable.get(name);
-            if (outer != null)
-                return outer.lookup(name, false);
+        for (Scope scope = this; scope != null; scope = scope.outer) {
+            Symbol symbol = isStructSymbol ? scope.structSymbolTable.get(name) : scope.symbolTable.get(name);
+            if (symbol != null)
+                return symbol;
         }
         return null;
     }
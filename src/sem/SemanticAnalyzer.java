@@ -1,14 +1,34 @@
 package sem;
 
+import ast.FunDecl;
+import ast.StructTypeDecl;
+import ast.VarDecl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class SemanticAnalyzer {
+
+	// where semantic errors are reported
+	private final PrintStream err;
+
+	public SemanticAnalyzer() {
+		this(System.err);
+	}
+
+	public SemanticAnalyzer(PrintStream err) {
+		this.err = err;
+	}
 	
 	public int analyze(ast.Program prog) {
 		// List of visitors
 		ArrayList<SemanticVisitor> visitors = new ArrayList<SemanticVisitor>() {{
-			add(new NameAnalysisVisitor());
-			add(new TypeCheckVisitor());
+			add(new NameAnalysisVisitor(err));
+			add(new TypeCheckVisitor(err));
 		}};
 		// Error accumulator
 		int errors = 0;
@@ -22,4 +42,42 @@ public class SemanticAnalyzer {
 		// Return the number of errors.
 		return errors;
 	}
+
+	// Same as analyze(prog), but once names are resolved the functions are type checked in parallel on the pool.
+	// Their errors are reported in declaration order.
+	public int analyze(ast.Program prog, ForkJoinPool pool) {
+		if (pool == null)
+			return analyze(prog);
+
+		NameAnalysisVisitor nameAnalysis = new NameAnalysisVisitor(err);
+		prog.accept(nameAnalysis);
+		int errors = nameAnalysis.getErrorCount();
+
+		TypeCheckVisitor typeCheck = new TypeCheckVisitor(err);
+		for (StructTypeDecl std : prog.structTypeDecls)
+			std.accept(typeCheck);
+		for (VarDecl vd : prog.varDecls)
+			vd.accept(typeCheck);
+		errors += typeCheck.getErrorCount();
+
+		List<ByteArrayOutputStream> messages = new ArrayList<>();
+		List<ForkJoinTask<TypeCheckVisitor>> functions = new ArrayList<>();
+		for (FunDecl fd : prog.funDecls) {
+			ByteArrayOutputStream functionMessages = new ByteArrayOutputStream();
+			TypeCheckVisitor functionTypeCheck = new TypeCheckVisitor(new PrintStream(functionMessages, true));
+			messages.add(functionMessages);
+			functions.add(pool.submit(() -> {
+				fd.accept(functionTypeCheck);
+				return functionTypeCheck;
+			}));
+		}
+
+		for (int i = 0; i < functions.size(); i++) {
+			errors += functions.get(i).join().getErrorCount();
+			err.print(messages.get(i).toString());
+		}
+
+		// Return the number of errors.
+		return errors;
+	}
 }
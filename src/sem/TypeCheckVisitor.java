@@ -2,10 +2,17 @@ package sem;
 
 import ast.*;
 
+import java.io.PrintStream;
 import java.util.*;
 
 public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 
+    public TypeCheckVisitor() {}
+
+    public TypeCheckVisitor(PrintStream err) {
+        super(err);
+    }
+
     public boolean isReturnable(Stmt stmt) {
         return (stmt instanceof Block || stmt instanceof If || stmt instanceof While || stmt instanceof Return);
     }
@@ -238,13 +245,7 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
         }
 
         StructTypeDecl std = ((StructType) exprType).std;
-        VarDecl varDecl = null;
-        for (VarDecl vd : std.variables) {
-            if (vd.varName.equals(fa.field)) {
-                varDecl = vd;
-                break;
-            }
-        }
+        VarDecl varDecl = std.field(fa.field);
 
         if (varDecl == null) {
             error("Field %s does not exist in struct", fa.field);
@@ -374,4 +375,10 @@ public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
         return r.expression.accept(this);
 	}
 
+	// only made by opt.Inliner, once the types are checked
+	@Override
+	public Type visitInlinedCallExpr(InlinedCallExpr ic) {
+        return ic.type;
+	}
+
 }
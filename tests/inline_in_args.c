@@ -0,0 +1,33 @@
+#include "minic-stdlib.h"
+
+// tri is inlined into an argument of rec, whose call has already pushed $ra, the prologue space and an argument
+
+int tri(int x) {
+    int s;
+    s = 0;
+    while (x > 0) {
+        s = s + x;
+        x = x - 1;
+    }
+    return s;
+}
+
+int rec(int a, int b, int c) {
+    if (a > 0)
+        return rec(a - 1, b, c) + 1;
+    return b * 10 + c;
+}
+
+int f(int n) {
+    int arr[3];
+    arr[0] = 1;
+    return 1 + rec(n, tri(n) % 7, arr[0]);
+}
+
+int main() {
+    print_i(f(3));
+    print_c('\n');
+    print_i(rec(tri(2), tri(3), tri(4)));
+    print_c('\n');
+    return 0;
+}
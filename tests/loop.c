@@ -0,0 +1,39 @@
+#include "minic-stdlib.h"
+
+int collatz(int n) {
+  int steps;
+  steps = 0;
+  while (n != 1) {
+    if (n % 2 == 0) n = n / 2;
+    else n = 3 * n + 1;
+    steps = steps + 1;
+  }
+  return steps;
+}
+
+int count(int n, int acc) {
+  if (n == 0) return acc;
+  return count(n - 1, acc + 1);
+}
+
+void main() {
+  int i; int total; int k;
+  total = 0;
+  i = 1;
+  while (i < 300) {
+    total = total + collatz(i);
+    i = i + 1;
+  }
+  print_i(total);
+  print_c('\n');
+  k = 0;
+  i = 0;
+  while (i < 1000) {
+    if (i % 3 == 0 || i % 5 == 0) k = k + i;
+    i = i + 1;
+  }
+  print_i(k);
+  print_c('\n');
+  print_i(count(2000, 0));
+  print_c('\n');
+}
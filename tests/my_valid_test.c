@@ -89,8 +89,8 @@ int main() {
     bo5 = 5;
     bo6 = 6;
 
-    boa[10] = 10;
-    boa[-1] = -1;
+    boa[9] = 10;
+    boa[0] = -1;
 
     print_i(bo1);
     print_c('\n');
@@ -104,6 +104,10 @@ int main() {
     print_c('\n');
     print_i(bo6);
     print_c('\n');
+    print_i(boa[0]);
+    print_c('\n');
+    print_i(boa[9]);
+    print_c('\n');
 
 
     if (1 == 1) {
@@ -0,0 +1,106 @@
+#include "minic-stdlib.h"
+
+struct pt { int x; char c; int y; };
+struct box { struct pt a; int w; struct pt b; };
+
+int g;
+struct pt gp;
+int garr[8];
+char gcarr[5];
+
+int fib(int n) {
+  if (n < 2) return n;
+  return fib(n - 1) + fib(n - 2);
+}
+
+int fact(int n, int acc) {
+  if (n <= 1) return acc;
+  return fact(n - 1, acc * n);
+}
+
+int sum7(int a, char b, int c, int d, int e, char f, int h) {
+  return a + ((int) b) + c * 2 + d - e + ((int) f) + h;
+}
+
+int sq(int x) { return x * x; }
+
+int addpt(struct pt p, int k) { return p.x + p.y + k + ((int) p.c); }
+
+void side() { g = g + 1; }
+
+int unused(int x) { return x * 3; }
+
+int main() {
+  int i; int j; int n; char c;
+  struct pt p; struct pt q;
+  struct box b1; struct box b2;
+  int arr[10];
+  int *ptr;
+
+  print_i(fib(15)); print_c('\n');
+  print_i(fact(10, 1)); print_c('\n');
+  print_i(sum7(1, 'a', 3, 4, 5, 'b', 7)); print_c('\n');
+  print_i(2 * 3 + sq(4) * 1 + 0); print_c('\n');
+  print_i(-7 / 2); print_c(' '); print_i(-7 % 2); print_c(' ');
+  print_i(7 / -2); print_c(' '); print_i(-7 % 4); print_c(' ');
+  n = -13;
+  print_i(n / 4); print_c(' '); print_i(n % 4); print_c(' ');
+  print_i(n * 8); print_c(' '); print_i(n * 10); print_c(' '); print_i(n * 7); print_c(' ');
+  print_i(n / 1); print_c(' '); print_i(n % 1); print_c(' '); print_i(n * -1); print_c(' ');
+  print_i(n / 8); print_c(' '); print_i(n % 16); print_c(' ');
+  n = 2147483647;
+  print_i(n - 1); print_c(' ');
+  print_i(-2147483647 - 1); print_c(' '); print_i(0 - 5 - -5); print_c('\n');
+  print_i(sizeof(struct box)); print_c(' '); print_i(sizeof(char) + sizeof(int*)); print_c('\n');
+
+  i = 0;
+  while (i < 10) { arr[i] = i * i; i = i + 1; }
+  i = 0; j = 0;
+  while (i < 10) { j = j + arr[i]; i = i + 1; }
+  print_i(j); print_c('\n');
+  i = 0;
+  while (i < 8) { garr[i] = 100 - i; i = i + 1; }
+  print_i(garr[3] + garr[7]); print_c('\n');
+  gcarr[0] = 'h'; gcarr[1] = 'i'; gcarr[2] = '!'; gcarr[3] = '\0';
+  i = 0;
+  while (gcarr[i] != '\0') { print_c(gcarr[i]); i = i + 1; }
+  print_c('\n');
+
+  p.x = 5; p.c = 'A'; p.y = 9;
+  q = p;
+  q.x = q.x + 1;
+  print_i(p.x); print_c(' '); print_i(q.x); print_c(q.c); print_i(q.y); print_c('\n');
+  b1.a = p; b1.w = 77; b1.b = q;
+  b2 = b1;
+  print_i(b2.a.x + b2.b.x + b2.w + b2.b.y); print_c(b2.a.c); print_c('\n');
+  gp = b2.b;
+  print_i(gp.x); print_c(gp.c); print_c('\n');
+  print_i(addpt(p, 100)); print_c('\n');
+
+  ptr = (int*) mcmalloc(16);
+  *ptr = 42;
+  print_i(*ptr); print_c('\n');
+
+  g = 0;
+  if (0 && 1) print_s((char*)"bad");
+  if (1 || 0) print_s((char*)"ok ");
+  if (g == 0 && (1 < 2 || 3 < 1)) print_s((char*)"ok2 ");
+  i = 3; j = 4;
+  if (i < j) print_s((char*)"lt ");
+  if (i <= 3) print_s((char*)"le ");
+  if (5 > i) print_s((char*)"gt ");
+  if (10 >= j) print_s((char*)"ge ");
+  if (i != j) print_s((char*)"ne ");
+  if (i == 3) print_s((char*)"eq ");
+  if (i > j) print_s((char*)"bad"); else print_s((char*)"else ");
+  if (i < j && j < 3) print_s((char*)"bad"); else print_s((char*)"and ");
+  if (j < i || j < 5) print_s((char*)"or ");
+  print_i(i < j); print_i(i > j); print_i(i == 3 && j == 4); print_i(0 || i);
+  print_c('\n');
+  side(); side();
+  print_i(g); print_c('\n');
+  c = 'z';
+  print_c(c);
+  print_c('\n');
+  return 0;
+}